@@ -16,8 +16,19 @@ public class ATM {
 
     public ATM(Bank bank) { this.bank = bank; }
 
+    // Returns the view to use for bulk or simulated traffic; plain ATM makes no distinction.
+    public ATM forBulkTraffic() { return this; }
+
+    // Admission-control metrics; empty when no controller is in front of the bank.
+    public List<AdmissionController.ClassStats> adminLoadStats() { return List.of(); }
+
     public User login(String accountNumber, String pin) throws AuthenticationException, IOException {
-        return bank.authenticate(accountNumber, pin);
+        return login(accountNumber, pin, null);
+    }
+
+    // The gate runs before the login is audited; a login it refuses leaves no LOGIN record.
+    public User login(String accountNumber, String pin, Bank.LoginGate gate) throws AuthenticationException, IOException {
+        return bank.authenticate(accountNumber, pin, gate);
     }
 
     public String balance(User user) {
@@ -42,6 +53,10 @@ public class ATM {
         return bank.lastN(user.getAccount().getAccountNumber(), n);
     }
 
+    public TransactionPage search(User user, TransactionQuery query) throws IOException, ValidationException {
+        return bank.search(user.getAccount().getAccountNumber(), query);
+    }
+
     // Admin passthrough
     public Account adminCreate(String name, Account.Role role, BigDecimal initialBalance, String pin)
             throws ValidationException, IOException {
@@ -51,4 +66,27 @@ public class ATM {
     public void adminDelete(String accountNumber) throws ValidationException, IOException {
         bank.deleteAccount(accountNumber);
     }
+
+    public void adminSetHot(String accountNumber, boolean hot) throws ValidationException, IOException {
+        bank.setHot(accountNumber, hot);
+    }
+
+    public java.util.Set<String> adminHotAccounts() {
+        return bank.hotAccounts();
+    }
+
+    public TransactionPage adminSearch(String accountNumber, TransactionQuery query)
+            throws ValidationException, IOException {
+        return bank.search(accountNumber, query);
+    }
+
+    public BatchPostingJob.Result adminPostInterest(BigDecimal ratePercent, String runId)
+            throws ValidationException, IOException, InterruptedException {
+        return bank.postingJob(BatchPostingJob.Kind.INTEREST, ratePercent, runId).call();
+    }
+
+    public BatchPostingJob.Result adminPostFee(BigDecimal fee, String runId)
+            throws ValidationException, IOException, InterruptedException {
+        return bank.postingJob(BatchPostingJob.Kind.FEE, fee, runId).call();
+    }
 }
@@ -28,6 +28,11 @@ public class Account {
         this.active = active;
     }
 
+    // For views that keep the fields elsewhere and override every accessor and mutator.
+    protected Account(String accountNumber) {
+        this.accountNumber = accountNumber;
+    }
+
     public String getAccountNumber() { return accountNumber; }
     public String getName() { return name; }
     public Role getRole() { return role; }
@@ -0,0 +1,138 @@
+/*
+ * AccountMailboxes.java - Per-account single-writer task queues on a shared executor.
+ *
+ * Each account has a mailbox, a FIFO of tasks that run one at a time and in submission order.
+ * A mailbox holds no thread while idle. When work arrives, it is scheduled on the executor and
+ * drains up to BATCH tasks in that run, so a stream of requests for one account is processed
+ * without a thread handoff per request. A task may return a stage it is waiting on, e.g. a step
+ * in another mailbox. The mailbox then parks without blocking a thread and carries on once the
+ * stage completes. Cross-account work must park in a fixed order (lower account number first),
+ * for the same reason locks are ordered. A mailbox whose queue has drained is removed, so accounts
+ * that were used once do not keep one; the next request for the account creates a fresh one.
+ */
+package atm;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+public class AccountMailboxes {
+    private static final int BATCH = 64;
+
+    private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    public AccountMailboxes(Executor executor) {
+        this.executor = executor;
+    }
+
+    // Runs task after everything already queued for the account.
+    public <T> CompletableFuture<T> submit(String accountNumber, Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        enqueue(accountNumber, new Work(result) {
+            @Override
+            CompletionStage<?> run() throws Exception {
+                result.complete(task.call());
+                return null;
+            }
+        });
+        return result;
+    }
+
+    // Like submit, but the mailbox stays blocked (without a thread) until the stage returned by
+    // step completes, and that stage's outcome becomes the result.
+    public <T> CompletableFuture<T> submitAndWait(String accountNumber, Supplier<? extends CompletionStage<T>> step) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        enqueue(accountNumber, new Work(result) {
+            @Override
+            CompletionStage<?> run() {
+                return step.get().whenComplete((v, e) -> {
+                    if (e == null) result.complete(v);
+                    else result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                });
+            }
+        });
+        return result;
+    }
+
+    public int mailboxCount() { return mailboxes.size(); }
+
+    private void enqueue(String accountNumber, Work work) {
+        // a mailbox removed meanwhile refuses the work; its successor takes it
+        while (!mailboxes.computeIfAbsent(accountNumber, Mailbox::new).enqueue(work)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    // One queued request; run() returns a stage to wait for, or null when it is done.
+    private abstract static class Work {
+        final CompletableFuture<?> future;
+
+        Work(CompletableFuture<?> future) { this.future = future; }
+
+        abstract CompletionStage<?> run() throws Exception;
+    }
+
+    private final class Mailbox {
+        private final String accountNumber;
+        private final ConcurrentLinkedQueue<Work> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private boolean removed;   // guarded by this
+
+        Mailbox(String accountNumber) { this.accountNumber = accountNumber; }
+
+        // False if the mailbox was removed from the map and must not take more work.
+        boolean enqueue(Work work) {
+            synchronized (this) {
+                if (removed) return false;
+                queue.add(work);
+            }
+            schedule();
+            return true;
+        }
+
+        private void schedule() {
+            if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) return;
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // executor is shut down: fail what is queued instead of leaving callers hanging
+                Work w;
+                while ((w = queue.poll()) != null) w.future.completeExceptionally(e);
+                scheduled.set(false);
+            }
+        }
+
+        private void drain() {
+            for (int n = 0; n < BATCH; n++) {
+                Work work = queue.poll();
+                if (work == null) break;
+                CompletionStage<?> pending;
+                try {
+                    pending = work.run();
+                } catch (Throwable e) {
+                    work.future.completeExceptionally(e);
+                    continue;
+                }
+                if (pending != null && !pending.toCompletableFuture().isDone()) {
+                    pending.whenComplete((v, e) -> release());   // park until the other side is done
+                    return;
+                }
+            }
+            release();
+        }
+
+        private void release() {
+            synchronized (this) {
+                scheduled.set(false);
+                // drained: under the lock no enqueue can slip in between the check and the removal
+                if (queue.isEmpty()) {
+                    removed = true;
+                    mailboxes.remove(accountNumber, this);
+                    return;
+                }
+            }
+            schedule();   // work that arrived meanwhile, or the rest of a full batch
+        }
+    }
+}
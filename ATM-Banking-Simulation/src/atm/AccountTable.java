@@ -0,0 +1,18 @@
+/*
+ * AccountTable.java - In-memory account storage used by Bank.
+ */
+package atm;
+
+public interface AccountTable {
+    // Returns the account or null if unknown. Implementations may return a live view.
+    Account get(String accountNumber);
+
+    // Inserts or replaces the account with the same number.
+    void put(Account account);
+
+    boolean containsKey(String accountNumber);
+    int size();
+
+    // A new list on every call; safe to hand to persistence.
+    java.util.List<Account> values();
+}
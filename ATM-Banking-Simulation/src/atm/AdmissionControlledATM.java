@@ -0,0 +1,167 @@
+/*
+ * AdmissionControlledATM.java - ATM that passes every call through an AdmissionController.
+ *
+ * Reads (balance, history, searches) and anything done by an admin are prioritized. Logins and
+ * money movements are standard traffic. The view returned by forBulkTraffic() runs everything
+ * as BULK, the first to be shed. Shed calls throw ServiceBusyException.
+ */
+package atm;
+
+import atm.AdmissionController.OperationClass;
+import atm.exceptions.AuthenticationException;
+import atm.exceptions.InsufficientFundsException;
+import atm.exceptions.ValidationException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+public class AdmissionControlledATM extends ATM {
+    private final Bank bank;
+    private final AdmissionController admission;
+    private final boolean bulk;
+
+    public AdmissionControlledATM(Bank bank, AdmissionController admission) {
+        this(bank, admission, false);
+    }
+
+    private AdmissionControlledATM(Bank bank, AdmissionController admission, boolean bulk) {
+        super(bank);
+        this.bank = bank;
+        this.admission = admission;
+        this.bulk = bulk;
+    }
+
+    @Override
+    public ATM forBulkTraffic() {
+        return bulk ? this : new AdmissionControlledATM(bank, admission, true);
+    }
+
+    @Override
+    public List<AdmissionController.ClassStats> adminLoadStats() {
+        return admission.stats();
+    }
+
+    @Override
+    public User login(String accountNumber, String pin, Bank.LoginGate gate) throws AuthenticationException, IOException {
+        admission.acquire(classify(null, OperationClass.STANDARD));
+        try {
+            return super.login(accountNumber, pin, gate);
+        } finally {
+            admission.release();
+        }
+    }
+
+    @Override
+    public String balance(User user) {
+        admission.acquire(classify(user, OperationClass.READ));
+        try {
+            return super.balance(user);
+        } finally {
+            admission.release();
+        }
+    }
+
+    @Override
+    public void deposit(User user, BigDecimal amount) throws ValidationException, IOException {
+        admission.acquire(classify(user, OperationClass.STANDARD));
+        try {
+            super.deposit(user, amount);
+        } finally {
+            admission.release();
+        }
+    }
+
+    @Override
+    public void withdraw(User user, BigDecimal amount)
+            throws ValidationException, InsufficientFundsException, IOException {
+        admission.acquire(classify(user, OperationClass.STANDARD));
+        try {
+            super.withdraw(user, amount);
+        } finally {
+            admission.release();
+        }
+    }
+
+    @Override
+    public void transfer(User user, String toAccount, BigDecimal amount)
+            throws ValidationException, InsufficientFundsException, IOException {
+        admission.acquire(classify(user, OperationClass.STANDARD));
+        try {
+            super.transfer(user, toAccount, amount);
+        } finally {
+            admission.release();
+        }
+    }
+
+    @Override
+    public List<Transaction> lastN(User user, int n) throws IOException, ValidationException {
+        admission.acquire(classify(user, OperationClass.READ));
+        try {
+            return super.lastN(user, n);
+        } finally {
+            admission.release();
+        }
+    }
+
+    @Override
+    public TransactionPage search(User user, TransactionQuery query) throws IOException, ValidationException {
+        admission.acquire(classify(user, OperationClass.READ));
+        try {
+            return super.search(user, query);
+        } finally {
+            admission.release();
+        }
+    }
+
+    @Override
+    public Account adminCreate(String name, Account.Role role, BigDecimal initialBalance, String pin)
+            throws ValidationException, IOException {
+        admission.acquire(classify(null, OperationClass.ADMIN));
+        try {
+            return super.adminCreate(name, role, initialBalance, pin);
+        } finally {
+            admission.release();
+        }
+    }
+
+    @Override
+    public void adminDelete(String accountNumber) throws ValidationException, IOException {
+        admission.acquire(classify(null, OperationClass.ADMIN));
+        try {
+            super.adminDelete(accountNumber);
+        } finally {
+            admission.release();
+        }
+    }
+
+    @Override
+    public void adminSetHot(String accountNumber, boolean hot) throws ValidationException, IOException {
+        admission.acquire(classify(null, OperationClass.ADMIN));
+        try {
+            super.adminSetHot(accountNumber, hot);
+        } finally {
+            admission.release();
+        }
+    }
+
+    @Override
+    public TransactionPage adminSearch(String accountNumber, TransactionQuery query)
+            throws ValidationException, IOException {
+        admission.acquire(classify(null, OperationClass.ADMIN));
+        try {
+            return super.adminSearch(accountNumber, query);
+        } finally {
+            admission.release();
+        }
+    }
+
+    // Posting jobs are long-running and bring their own parallelism, so they are not admitted
+    // through the controller; holding a slot for the whole run would starve everyone else.
+
+    private OperationClass classify(User user, OperationClass base) {
+        if (bulk) return OperationClass.BULK;
+        if (user != null && user.isAdmin()) return OperationClass.ADMIN;
+        return base;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * AdmissionController.java - Bounds concurrent work and sheds load before it reaches Bank.
+ *
+ * At most maxConcurrent operations run at once. Further callers wait in a bounded queue for
+ * their operation class, up to the class's maximum wait. A freed slot is always handed to the
+ * oldest waiter of the highest-priority class. A caller whose queue is full or whose wait
+ * expires gets a ServiceBusyException immediately instead of piling onto Bank's locks.
+ * BULK traffic is also shed as soon as any more important class is queueing; those rejections
+ * are counted apart from full queues.
+ */
+package atm;
+
+import atm.exceptions.ServiceBusyException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class AdmissionController {
+    // declared in priority order, highest first
+    public enum OperationClass { ADMIN, READ, STANDARD, BULK }
+
+    private static final class Waiter {
+        final Condition ready;
+        boolean granted;
+
+        Waiter(Condition ready) { this.ready = ready; }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int maxConcurrent;
+    private int inFlight;
+
+    private final int classes = OperationClass.values().length;
+    private final List<ArrayDeque<Waiter>> queues = new ArrayList<>(classes);
+    private final int[] queueCapacity = new int[classes];
+    private final long[] maxWaitNanos = new long[classes];
+
+    // metrics, guarded by lock
+    private final long[] admitted = new long[classes];
+    private final long[] rejectedQueueFull = new long[classes];
+    private final long[] rejectedPriority = new long[classes];
+    private final long[] rejectedTimeout = new long[classes];
+    private final long[] totalWaitNanos = new long[classes];
+    private final long[] maxObservedWaitNanos = new long[classes];
+
+    public AdmissionController(int maxConcurrent) {
+        if (maxConcurrent <= 0) throw new IllegalArgumentException("maxConcurrent must be > 0");
+        this.maxConcurrent = maxConcurrent;
+        for (int i = 0; i < classes; i++) queues.add(new ArrayDeque<>());
+        configure(OperationClass.ADMIN, 64, 5000);
+        configure(OperationClass.READ, 256, 1000);
+        configure(OperationClass.STANDARD, 256, 2000);
+        configure(OperationClass.BULK, 32, 200);
+    }
+
+    public void configure(OperationClass cls, int capacity, long maxWaitMillis) {
+        lock.lock();
+        try {
+            queueCapacity[cls.ordinal()] = Math.max(0, capacity);
+            maxWaitNanos[cls.ordinal()] = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until admitted or throws ServiceBusyException. Every successful acquire needs a release().
+    public void acquire(OperationClass cls) {
+        int c = cls.ordinal();
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (inFlight < maxConcurrent) {
+                inFlight++;
+                recordAdmit(c, 0);
+                return;
+            }
+            ArrayDeque<Waiter> queue = queues.get(c);
+            if (cls == OperationClass.BULK && higherPriorityWaiting(c)) {
+                rejectedPriority[c]++;
+                throw new ServiceBusyException("System busy, please retry.");
+            }
+            if (queue.size() >= queueCapacity[c]) {
+                rejectedQueueFull[c]++;
+                throw new ServiceBusyException("System busy, please retry.");
+            }
+            Waiter w = new Waiter(lock.newCondition());
+            queue.addLast(w);
+            long remaining = maxWaitNanos[c];
+            try {
+                while (!w.granted) {
+                    if (remaining <= 0) {
+                        queue.remove(w);
+                        rejectedTimeout[c]++;
+                        throw new ServiceBusyException("System busy, please retry.");
+                    }
+                    remaining = w.ready.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (w.granted) releaseLocked();
+                else queue.remove(w);
+                Thread.currentThread().interrupt();
+                throw new ServiceBusyException("Interrupted while waiting for admission.");
+            }
+            recordAdmit(c, System.nanoTime() - start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            releaseLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<ClassStats> stats() {
+        lock.lock();
+        try {
+            List<ClassStats> out = new ArrayList<>(classes);
+            for (OperationClass cls : OperationClass.values()) {
+                int c = cls.ordinal();
+                out.add(new ClassStats(cls, queues.get(c).size(), admitted[c], rejectedQueueFull[c], rejectedPriority[c],
+                        rejectedTimeout[c], admitted[c] == 0 ? 0 : totalWaitNanos[c] / admitted[c],
+                        maxObservedWaitNanos[c]));
+            }
+            return out;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // --- helpers (lock held) ---
+
+    private void releaseLocked() {
+        for (ArrayDeque<Waiter> queue : queues) {
+            Waiter next = queue.pollFirst();
+            if (next != null) {
+                // hand the slot over directly; inFlight is unchanged
+                next.granted = true;
+                next.ready.signal();
+                return;
+            }
+        }
+        inFlight--;
+    }
+
+    private boolean higherPriorityWaiting(int c) {
+        for (int i = 0; i < c; i++) if (!queues.get(i).isEmpty()) return true;
+        return false;
+    }
+
+    private void recordAdmit(int c, long waitedNanos) {
+        admitted[c]++;
+        totalWaitNanos[c] += waitedNanos;
+        if (waitedNanos > maxObservedWaitNanos[c]) maxObservedWaitNanos[c] = waitedNanos;
+    }
+
+    public static final class ClassStats {
+        private final OperationClass operationClass;
+        private final int queueDepth;
+        private final long admitted;
+        private final long rejectedQueueFull;
+        private final long rejectedPriority;
+        private final long rejectedTimeout;
+        private final long avgWaitNanos;
+        private final long maxWaitNanos;
+
+        ClassStats(OperationClass operationClass, int queueDepth, long admitted, long rejectedQueueFull,
+                   long rejectedPriority, long rejectedTimeout, long avgWaitNanos, long maxWaitNanos) {
+            this.operationClass = operationClass;
+            this.queueDepth = queueDepth;
+            this.admitted = admitted;
+            this.rejectedQueueFull = rejectedQueueFull;
+            this.rejectedPriority = rejectedPriority;
+            this.rejectedTimeout = rejectedTimeout;
+            this.avgWaitNanos = avgWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        public OperationClass getOperationClass() { return operationClass; }
+        public int getQueueDepth() { return queueDepth; }
+        public long getAdmitted() { return admitted; }
+        public long getRejectedQueueFull() { return rejectedQueueFull; }
+        // BULK requests shed because a more important class was waiting
+        public long getRejectedPriority() { return rejectedPriority; }
+        public long getRejectedTimeout() { return rejectedTimeout; }
+        public long getRejected() { return rejectedQueueFull + rejectedPriority + rejectedTimeout; }
+        public long getAvgWaitNanos() { return avgWaitNanos; }
+        public long getMaxWaitNanos() { return maxWaitNanos; }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s queued=%d admitted=%d rejected(full)=%d rejected(priority)=%d rejected(timeout)=%d"
+                            + " avgWait=%.2fms maxWait=%.2fms",
+                    operationClass, queueDepth, admitted, rejectedQueueFull, rejectedPriority, rejectedTimeout,
+                    avgWaitNanos / 1e6, maxWaitNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * AsyncATM.java - Non-blocking ATM API: every call returns a CompletableFuture.
+ *
+ * Operations on an account run through that account's mailbox (see AccountMailboxes), so one
+ * account's requests are applied one at a time, in the order they were issued, on a shared
+ * executor. A caller can have thousands of requests in flight without a thread each. A transfer
+ * is queued in the lower-numbered account's mailbox, which then hands it to the other account's
+ * mailbox and waits there without a thread until it is done.
+ * Failures complete the future exceptionally with the same exceptions the synchronous ATM
+ * throws (ValidationException, InsufficientFundsException, ...).
+ *
+ * Bank keeps its account locks because the synchronous ATM may use the same Bank at the same
+ * time; for traffic that only comes through here those locks are never contended.
+ */
+package atm;
+
+import atm.exceptions.ValidationException;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+public class AsyncATM {
+    private final Bank bank;
+    private final Executor executor;
+    private final AccountMailboxes mailboxes;
+
+    public AsyncATM(Bank bank, Executor executor) {
+        this.bank = bank;
+        this.executor = executor;
+        this.mailboxes = new AccountMailboxes(executor);
+    }
+
+    // Logins touch no balance, so they skip the mailboxes.
+    public CompletableFuture<User> login(String accountNumber, String pin) {
+        CompletableFuture<User> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                result.complete(bank.authenticate(accountNumber, pin));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    // Queued behind the account's pending writes, so the caller sees its own earlier requests.
+    public CompletableFuture<String> balance(User user) {
+        String acc = user.getAccount().getAccountNumber();
+        return mailboxes.submit(acc, () -> bank.balance(acc).toPlainString());
+    }
+
+    public CompletableFuture<Void> deposit(User user, BigDecimal amount) {
+        String acc = user.getAccount().getAccountNumber();
+        return mailboxes.submit(acc, () -> {
+            bank.deposit(acc, amount);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> withdraw(User user, BigDecimal amount) {
+        String acc = user.getAccount().getAccountNumber();
+        return mailboxes.submit(acc, () -> {
+            bank.withdraw(acc, amount);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> transfer(User user, String toAccount, BigDecimal amount) {
+        String from = user.getAccount().getAccountNumber();
+        if (toAccount == null || from.equals(toAccount)) {
+            return CompletableFuture.failedFuture(new ValidationException("Cannot transfer to same account."));
+        }
+        // first mailbox waits for the second, in account order, like the locks in Bank.transfer
+        String first = from.compareTo(toAccount) < 0 ? from : toAccount;
+        String second = first.equals(from) ? toAccount : from;
+        return mailboxes.submitAndWait(first, () -> mailboxes.submit(second, () -> {
+            bank.transfer(from, toAccount, amount);
+            return null;
+        }));
+    }
+
+    public CompletableFuture<List<Transaction>> lastN(User user, int n) {
+        String acc = user.getAccount().getAccountNumber();
+        return mailboxes.submit(acc, () -> bank.lastN(acc, n));
+    }
+
+    public CompletableFuture<TransactionPage> search(User user, TransactionQuery query) {
+        String acc = user.getAccount().getAccountNumber();
+        return mailboxes.submit(acc, () -> bank.search(acc, query));
+    }
+}
@@ -15,24 +15,115 @@ import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 public class Bank {
-    private final java.util.Map<String, Account> accounts = new java.util.HashMap<>();
+    private final AccountTable accounts;
     private final DataStore store;
     private final LockManager lockManager = new LockManager();
+    private final Object persistLock = new Object();
+    // group commit of account saves: changes counts persistAccounts calls, savedChanges (guarded
+    // by persistLock) how many of them the last saved snapshot covers
+    private final java.util.concurrent.atomic.AtomicLong changes = new java.util.concurrent.atomic.AtomicLong();
+    private long savedChanges;
     private final Logger logger;
+    private volatile LoginAudit loginAudit;
+    // accounts whose balance is partly held in stripes; see StripedBalance
+    private final java.util.concurrent.ConcurrentHashMap<String, StripedBalance> hot = new java.util.concurrent.ConcurrentHashMap<>();
+    private final int hotStripes = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private volatile HotAccountDetector hotDetector;
 
     public Bank(DataStore store, Logger logger) throws IOException {
+        this(store, logger, new HashAccountTable());
+    }
+
+    public Bank(DataStore store, Logger logger, AccountTable accounts) throws IOException {
         this.store = store;
         this.logger = logger;
+        this.accounts = accounts;
+        this.loginAudit = LoginAudit.all(store, logger);
         for (Account a : store.loadAccounts()) {
-            accounts.put(a.getAccountNumber(), a);
+            accounts.put(a);
         }
     }
 
-    public synchronized java.util.List<Account> snapshotAccounts() {
-        return new java.util.ArrayList<>(accounts.values());
+    /*
+     * Every operation appends its records before it saves accounts.csv, so after a crash the log
+     * may be ahead of the saved balances, never behind. This sets each account to the balanceAfter
+     * of its last record and saves the result. LOGIN and BALANCE_INQUIRY records only report a
+     * balance, which may be stale, so they are skipped.
+     * Call once at startup, before anything else uses the bank. Returns the accounts repaired.
+     */
+    public int recoverFromLog() throws IOException {
+        java.util.Map<String, BigDecimal> logged = new java.util.HashMap<>();
+        store.forEachTransaction(tx -> {
+            if (tx.getType() != TransactionType.LOGIN && tx.getType() != TransactionType.BALANCE_INQUIRY
+                    && tx.getBalanceAfter() != null) {
+                logged.put(tx.getAccountNumber(), tx.getBalanceAfter());
+            }
+        });
+        int repaired = 0;
+        synchronized (this) {
+            for (java.util.Map.Entry<String, BigDecimal> e : logged.entrySet()) {
+                Account acc = accounts.get(e.getKey());
+                if (acc == null) continue;
+                BigDecimal diff = e.getValue().subtract(acc.getBalance());
+                if (diff.signum() == 0) continue;
+                if (diff.signum() > 0) acc.deposit(diff);
+                else acc.withdraw(diff.negate());
+                logger.warning("Recovered balance of " + e.getKey() + " from the log: " + e.getValue());
+                repaired++;
+            }
+        }
+        if (repaired > 0) persistAccounts();
+        return repaired;
+    }
+
+    public java.util.List<Account> snapshotAccounts() {
+        java.util.List<Account> list;
+        synchronized (this) {
+            list = accounts.values();
+        }
+        if (hot.isEmpty()) return list;
+        // hot accounts are copied with their full balance, base plus stripes
+        for (int i = 0; i < list.size(); i++) {
+            Account a = list.get(i);
+            if (!hot.containsKey(a.getAccountNumber())) continue;
+            list.set(i, new Account(a.getAccountNumber(), a.getName(), a.getRole(), balanceOf(a),
+                    a.getPinHash(), a.getSalt(), a.isActive()));
+        }
+        return list;
+    }
+
+    // Replaces the default one-record-per-login policy, e.g. with sampling or coalescing.
+    public void setLoginAudit(LoginAudit loginAudit) { this.loginAudit = loginAudit; }
+
+    // Runs between the credentials check and the audit record, and may still refuse the login
+    // (e.g. SessionManager.open when the account has too many sessions).
+    public interface LoginGate {
+        void admit(User user) throws AuthenticationException;
     }
 
     public User authenticate(String accountNumber, String pin) throws AuthenticationException, IOException {
+        return authenticate(accountNumber, pin, null);
+    }
+
+    public User authenticate(String accountNumber, String pin, LoginGate gate) throws AuthenticationException, IOException {
+        Account acc = verifyCredentials(accountNumber, pin);
+        User user = new User(acc);
+        if (gate != null) {
+            try {
+                gate.admit(user);
+            } catch (AuthenticationException e) {
+                logger.warning("Login refused for " + accountNumber + ": " + e.getMessage());
+                throw e;
+            }
+        }
+        // record login transaction (amount 0), as the audit policy allows
+        loginAudit.record(accountNumber, balanceOf(acc));
+        logger.info("Login success for " + accountNumber);
+        return user;
+    }
+
+    // Checks credentials without writing a LOGIN record (used by read-only replicas).
+    Account verifyCredentials(String accountNumber, String pin) throws AuthenticationException {
         Account acc;
         synchronized (this) {
             acc = accounts.get(accountNumber);
@@ -46,30 +137,31 @@ public class Bank {
             logger.warning("Auth failed: wrong PIN for " + accountNumber);
             throw new AuthenticationException("Invalid credentials.");
         }
-        // record login transaction (amount 0)
-        Transaction tx = new Transaction(LocalDateTime.now(), accountNumber, TransactionType.LOGIN,
-                BigDecimal.ZERO, acc.getBalance(), "Successful login", "");
-        store.appendTransaction(tx);
-        logger.info("Login success for " + accountNumber);
-        return new User(acc);
+        return acc;
     }
 
     public BigDecimal balance(String accountNumber) {
+        Account acc;
         synchronized (this) {
-            return accounts.get(accountNumber).getBalance();
+            acc = accounts.get(accountNumber);
         }
+        return balanceOf(acc);
     }
 
     public void deposit(String accountNumber, BigDecimal amount) throws ValidationException, IOException {
         checkAmount(amount);
+        StripedBalance striped = hot.get(accountNumber);
+        if (striped != null && depositHot(striped, accountNumber, amount)) return;
         ReentrantLock lock = lockManager.lockFor(accountNumber);
+        noteCredit(accountNumber, lock);
         lock.lock();
         try {
             Account acc = accounts.get(accountNumber);
-            acc.deposit(amount);
-            store.saveAccounts(snapshotAccounts());
-            store.appendTransaction(new Transaction(LocalDateTime.now(), accountNumber,
-                    TransactionType.DEPOSIT, amount, acc.getBalance(), "Cash deposit", ""));
+            credit(acc, amount);
+            Records records = new Records();
+            records.add(acc, TransactionType.DEPOSIT, amount, cents(amount), "Cash deposit", "");
+            records.write();
+            persistAccounts();
             logger.info("Deposit " + amount + " to " + accountNumber);
         } finally {
             lock.unlock();
@@ -83,14 +175,14 @@ public class Bank {
         lock.lock();
         try {
             Account acc = accounts.get(accountNumber);
-            if (acc.getBalance().compareTo(amount) < 0) {
+            if (!debit(acc, amount)) {
                 logger.warning("Insufficient funds: " + accountNumber);
                 throw new InsufficientFundsException("Insufficient balance.");
             }
-            acc.withdraw(amount);
-            store.saveAccounts(snapshotAccounts());
-            store.appendTransaction(new Transaction(LocalDateTime.now(), accountNumber,
-                    TransactionType.WITHDRAW, amount, acc.getBalance(), "Cash withdrawal", ""));
+            Records records = new Records();
+            records.add(acc, TransactionType.WITHDRAW, amount, -cents(amount), "Cash withdrawal", "");
+            records.write();
+            persistAccounts();
             logger.info("Withdraw " + amount + " from " + accountNumber);
         } finally {
             lock.unlock();
@@ -101,6 +193,8 @@ public class Bank {
             throws ValidationException, InsufficientFundsException, IOException {
         if (java.util.Objects.equals(fromAcc, toAcc)) throw new ValidationException("Cannot transfer to same account.");
         checkAmount(amount);
+        StripedBalance striped = hot.get(toAcc);
+        if (striped != null && !hot.containsKey(fromAcc) && transferToHot(striped, fromAcc, toAcc, amount)) return;
 
         // order locks by account number to avoid deadlocks
         String a = fromAcc.compareTo(toAcc) < 0 ? fromAcc : toAcc;
@@ -109,6 +203,7 @@ public class Bank {
         ReentrantLock lockA = lockManager.lockFor(a);
         ReentrantLock lockB = lockManager.lockFor(b);
 
+        noteCredit(toAcc, lockManager.lockFor(toAcc));
         lockA.lock();
         lockB.lock();
         try {
@@ -117,19 +212,15 @@ public class Bank {
             if (src == null || dst == null || !src.isActive() || !dst.isActive()) {
                 throw new ValidationException("Invalid or inactive destination/source account.");
             }
-            if (src.getBalance().compareTo(amount) < 0) {
+            if (!debit(src, amount)) {
                 throw new InsufficientFundsException("Insufficient balance for transfer.");
             }
-            src.withdraw(amount);
-            dst.deposit(amount);
-            store.saveAccounts(snapshotAccounts());
-            store.appendTransaction(new Transaction(LocalDateTime.now(), fromAcc,
-                    TransactionType.TRANSFER_OUT, amount, src.getBalance(),
-                    "Transfer to " + toAcc, toAcc));
-            store.appendTransaction(new Transaction(LocalDateTime.now(), toAcc,
-                    TransactionType.TRANSFER_IN, amount, dst.getBalance(),
-                    "Transfer from " + fromAcc, fromAcc));
-            logger.info("Transfer " + amount + " from " + fromAcc + " to " + toAcc);
+            credit(dst, amount);
+            Records records = new Records();
+            addTransfer(records, src, dst, amount);
+            records.write();
+            persistAccounts();
+            logTransfer(src, dst, amount);
         } finally {
             lockB.unlock();
             lockA.unlock();
@@ -141,36 +232,494 @@ public class Bank {
         return store.loadLastNTransactions(accountNumber, n);
     }
 
+    public TransactionPage search(String accountNumber, TransactionQuery query) throws IOException, ValidationException {
+        if (query == null) throw new ValidationException("Query is required.");
+        query.validate();
+        return store.searchTransactions(accountNumber, query);
+    }
+
     // --- Admin operations ---
 
-    public synchronized Account createAccount(String name, Account.Role role, BigDecimal initialBalance, String pin)
+    public Account createAccount(String name, Account.Role role, BigDecimal initialBalance, String pin)
             throws ValidationException, IOException {
         if (name == null || name.isBlank()) throw new ValidationException("Name is required.");
         checkAmount(initialBalance);
-        String newAcc = generateAccountNumber();
         String salt = SecurityUtil.generateSaltHex(8);
         String hash = SecurityUtil.hashPin(pin, salt);
-        Account acc = new Account(newAcc, name.trim(), role, Account.normalize(initialBalance), hash, salt, true);
-        accounts.put(newAcc, acc);
-        store.saveAccounts(snapshotAccounts());
-        store.appendTransaction(new Transaction(LocalDateTime.now(), newAcc,
+        Account acc;
+        synchronized (this) {
+            String newAcc = generateAccountNumber();
+            accounts.put(new Account(newAcc, name.trim(), role, Account.normalize(initialBalance), hash, salt, true));
+            acc = accounts.get(newAcc);
+        }
+        persistAccounts();
+        store.appendTransaction(new Transaction(LocalDateTime.now(), acc.getAccountNumber(),
                 TransactionType.ACCOUNT_CREATE, BigDecimal.ZERO, acc.getBalance(), "Account created", ""));
-        logger.info("Admin created account " + newAcc + " (" + role + ")");
+        logger.info("Admin created account " + acc.getAccountNumber() + " (" + role + ")");
         return acc;
     }
 
-    public synchronized void deleteAccount(String accountNumber) throws ValidationException, IOException {
-        Account acc = accounts.get(accountNumber);
+    public void deleteAccount(String accountNumber) throws ValidationException, IOException {
+        Account acc;
+        synchronized (this) {
+            acc = accounts.get(accountNumber);
+        }
         if (acc == null) throw new ValidationException("Account does not exist.");
-        acc.setActive(false);
-        store.saveAccounts(snapshotAccounts());
-        store.appendTransaction(new Transaction(LocalDateTime.now(), accountNumber,
-                TransactionType.ACCOUNT_DELETE, BigDecimal.ZERO, acc.getBalance(), "Account deactivated", ""));
-        logger.info("Admin deactivated account " + accountNumber);
+        // under the account lock, so no transfer can slip in between the check and the record
+        ReentrantLock lock = lockManager.lockFor(accountNumber);
+        lock.lock();
+        // a hot account also takes all stripes, which shuts out lock-free credits
+        StripedBalance striped = hot.get(accountNumber);
+        if (striped != null) striped.lockAll();
+        try {
+            acc.setActive(false);
+            Records records = new Records();
+            records.add(acc, TransactionType.ACCOUNT_DELETE, BigDecimal.ZERO, 0, "Account deactivated", "");
+            records.write();
+            persistAccounts();
+            logger.info("Admin deactivated account " + accountNumber);
+        } finally {
+            if (striped != null) striped.unlockAll();
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Marks an account hot (or back to normal). While hot, credits go to a per-thread stripe
+     * without taking the account lock; debits still take the lock and then all stripes.
+     * Unmarking folds the stripes back into the account balance.
+     */
+    public void setHot(String accountNumber, boolean isHot) throws ValidationException, IOException {
+        Account acc;
+        synchronized (this) {
+            acc = accounts.get(accountNumber);
+        }
+        if (acc == null || (isHot && !acc.isActive())) throw new ValidationException("Account does not exist.");
+        ReentrantLock lock = lockManager.lockFor(accountNumber);
+        lock.lock();
+        try {
+            if (isHot) {
+                if (hot.putIfAbsent(accountNumber, new StripedBalance(hotStripes, cents(acc.getBalance()))) == null) {
+                    logger.info("Account " + accountNumber + " marked hot");
+                }
+                return;
+            }
+            StripedBalance striped = hot.get(accountNumber);
+            if (striped == null) return;
+            striped.lockAll();
+            try {
+                // records still queued go first; after the fold they would be out of order
+                striped.journal().writeAll(store);
+                acc.deposit(BigDecimal.valueOf(striped.retireLocked(), 2));
+                hot.remove(accountNumber);
+            } finally {
+                striped.unlockAll();
+            }
+            logger.info("Account " + accountNumber + " back to normal");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isHot(String accountNumber) { return hot.containsKey(accountNumber); }
+
+    public java.util.Set<String> hotAccounts() { return new java.util.TreeSet<>(hot.keySet()); }
+
+    // Receives every credit so it can mark accounts hot automatically; null turns detection off.
+    public void setHotAccountDetector(HotAccountDetector detector) { this.hotDetector = detector; }
+
+    public BatchPostingJob postingJob(BatchPostingJob.Kind kind, BigDecimal value, String runId)
+            throws ValidationException {
+        if (kind == null) throw new ValidationException("Posting kind is required.");
+        if (runId == null || !runId.matches("[A-Za-z0-9_-]+")) {
+            throw new ValidationException("Run id may only contain letters, digits, '-' and '_'.");
+        }
+        if (kind == BatchPostingJob.Kind.FEE) checkAmount(value);
+        else if (value == null || value.compareTo(BigDecimal.ZERO) <= 0) throw new ValidationException("Rate must be > 0.");
+        return new BatchPostingJob(this, store, logger, kind, value, runId,
+                BatchPostingJob.DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    // --- replication ---
+
+    // Replaces in-memory state with a row shipped by the primary; the follower persists it itself.
+    void applyReplicated(Account account) {
+        synchronized (this) {
+            accounts.put(account);
+        }
+    }
+
+    // --- batch operations ---
+
+    /*
+     * Posts one amount per account while holding every lock of the chunk (taken in account
+     * order, like transfer), then appends all records in a single write and persists account
+     * state once. If the records cannot be written, the chunk is undone in memory. deltaFor maps
+     * the current balance to a signed amount: positive credits, negative debits, null/zero
+     * skips. Debits that would overdraw are skipped.
+     */
+    java.util.List<Transaction> postChunk(java.util.List<String> accountNumbers, TransactionType type,
+                                          java.util.function.UnaryOperator<BigDecimal> deltaFor, String details)
+            throws IOException {
+        java.util.List<String> ordered = new java.util.ArrayList<>(accountNumbers);
+        java.util.Collections.sort(ordered);
+        java.util.List<ReentrantLock> held = lockAll(ordered);
+        try {
+            Records records = new Records();
+            java.util.List<Account> posted = new java.util.ArrayList<>();
+            java.util.List<BigDecimal> deltas = new java.util.ArrayList<>();
+            for (String accountNumber : ordered) {
+                Account acc;
+                synchronized (this) {
+                    acc = accounts.get(accountNumber);
+                }
+                if (acc == null || !acc.isActive()) continue;
+                BigDecimal delta = deltaFor.apply(balanceOf(acc));
+                if (delta == null || delta.signum() == 0) continue;
+                BigDecimal amount = Account.normalize(delta.abs());
+                if (delta.signum() > 0) {
+                    credit(acc, amount);
+                } else if (!debit(acc, amount)) {
+                    continue;
+                }
+                records.add(acc, type, amount, delta.signum() > 0 ? cents(amount) : -cents(amount), details, "");
+                posted.add(acc);
+                deltas.add(delta.signum() > 0 ? amount : amount.negate());
+            }
+            if (records.isEmpty()) return records.written();
+            try {
+                records.write();
+            } catch (IOException e) {
+                // nothing reached the log: undo the chunk, so that a resumed run posts it once
+                if (!records.isQueued()) {
+                    for (int i = posted.size() - 1; i >= 0; i--) {
+                        BigDecimal delta = deltas.get(i);
+                        if (delta.signum() > 0) debit(posted.get(i), delta);
+                        else credit(posted.get(i), delta.negate());
+                    }
+                }
+                throw e;
+            }
+            // the log has the chunk now; if this save fails, recoverFromLog repairs the balances
+            persistAccounts();
+            return records.written();
+        } finally {
+            unlockAll(held);
+        }
+    }
+
+    // --- hot accounts ---
+
+    // Full balance: the account's own balance plus its stripes, if hot.
+    private BigDecimal balanceOf(Account acc) {
+        while (true) {
+            StripedBalance striped = hot.get(acc.getAccountNumber());
+            if (striped == null) return acc.getBalance();
+            // base first, then stripes: a fold in between shows up as retired and is read again
+            BigDecimal base = acc.getBalance();
+            long extra = striped.cents();
+            if (!striped.isRetired()) return base.add(BigDecimal.valueOf(extra, 2));
+        }
+    }
+
+    // Caller holds the account lock, so the account cannot stop being hot meanwhile.
+    private void credit(Account acc, BigDecimal amount) {
+        StripedBalance striped = hot.get(acc.getAccountNumber());
+        if (striped == null) acc.deposit(amount);
+        else striped.credit(cents(amount));
+    }
+
+    // Caller holds the account lock. Takes from the stripes first, then the account's own balance.
+    private boolean debit(Account acc, BigDecimal amount) {
+        StripedBalance striped = hot.get(acc.getAccountNumber());
+        if (striped == null) {
+            if (acc.getBalance().compareTo(amount) < 0) return false;
+            acc.withdraw(amount);
+            return true;
+        }
+        long cents = cents(amount);
+        striped.lockAll();
+        try {
+            if (acc.getBalance().add(striped.total()).compareTo(amount) < 0) return false;
+            long fromStripes = striped.debitLocked(cents);
+            acc.withdraw(BigDecimal.valueOf(cents - fromStripes, 2));
+            return true;
+        } finally {
+            striped.unlockAll();
+        }
+    }
+
+    // Deposit that only takes one stripe lock. Returns false if the account stopped being hot.
+    private boolean depositHot(StripedBalance striped, String accountNumber, BigDecimal amount) throws IOException {
+        Account acc;
+        synchronized (this) {
+            acc = accounts.get(accountNumber);
+        }
+        Records records = new Records();
+        int stripe = striped.lockStripe();
+        try {
+            if (striped.isRetired()) return false;
+            striped.creditLocked(stripe, cents(amount));
+            // queued while the stripe is held, so that a fold (which takes every stripe) sees it
+            records.add(acc, TransactionType.DEPOSIT, amount, cents(amount), "Cash deposit", "");
+            records.queue();
+        } finally {
+            striped.unlockStripe(stripe);
+        }
+        noteCredit(accountNumber, null);
+        records.write();
+        persistAccounts();
+        logger.info("Deposit " + amount + " to " + accountNumber);
+        return true;
+    }
+
+    // Transfer into a hot account: the source lock, then one stripe of the destination.
+    private boolean transferToHot(StripedBalance striped, String fromAcc, String toAcc, BigDecimal amount)
+            throws ValidationException, InsufficientFundsException, IOException {
+        ReentrantLock lock = lockManager.lockFor(fromAcc);
+        lock.lock();
+        try {
+            // a source turned hot meanwhile needs the general path, which never holds two stripe sets
+            if (hot.containsKey(fromAcc)) return false;
+            Records records = new Records();
+            Account src, dst;
+            int stripe = striped.lockStripe();
+            try {
+                if (striped.isRetired()) return false;
+                src = accounts.get(fromAcc);
+                dst = accounts.get(toAcc);
+                if (src == null || dst == null || !src.isActive() || !dst.isActive()) {
+                    throw new ValidationException("Invalid or inactive destination/source account.");
+                }
+                if (!debit(src, amount)) {
+                    throw new InsufficientFundsException("Insufficient balance for transfer.");
+                }
+                striped.creditLocked(stripe, cents(amount));
+                addTransfer(records, src, dst, amount);
+                records.queue();
+            } finally {
+                striped.unlockStripe(stripe);
+            }
+            // the stripe is free again; the source lock keeps the source's records in order
+            noteCredit(toAcc, null);
+            records.write();
+            persistAccounts();
+            logTransfer(src, dst, amount);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void addTransfer(Records records, Account src, Account dst, BigDecimal amount) {
+        String fromAcc = src.getAccountNumber(), toAcc = dst.getAccountNumber();
+        records.add(src, TransactionType.TRANSFER_OUT, amount, -cents(amount), "Transfer to " + toAcc, toAcc);
+        records.add(dst, TransactionType.TRANSFER_IN, amount, cents(amount), "Transfer from " + fromAcc, fromAcc);
+    }
+
+    private void logTransfer(Account src, Account dst, BigDecimal amount) {
+        logger.info("Transfer " + amount + " from " + src.getAccountNumber() + " to " + dst.getAccountNumber());
+    }
+
+    // Tells the detector about a credit; lock is the account lock about to be taken, or null if
+    // the credit went to a stripe.
+    private void noteCredit(String accountNumber, ReentrantLock lock) {
+        HotAccountDetector detector = hotDetector;
+        if (detector != null) detector.recordCredit(accountNumber, lock != null && lock.isLocked());
+    }
+
+    /*
+     * Executes the current occurrence of each order as a transfer, all under the locks of every
+     * account involved (taken in account order), then appends all records in one write and
+     * persists account state once. Returns one entry per order: null if paid, otherwise the
+     * exception that rejected it. A rejected order changes nothing. If the records cannot be
+     * written, the batch is undone in memory and the IOException is thrown, unless its records
+     * have already gone into a hot account's journal. Once written or queued, the batch counts as
+     * paid, even if the account save then fails.
+     */
+    java.util.List<Exception> transferBatch(java.util.List<StandingOrder> orders) throws IOException {
+        java.util.SortedSet<String> involved = new java.util.TreeSet<>();
+        for (StandingOrder o : orders) {
+            involved.add(o.getFromAccount());
+            involved.add(o.getToAccount());
+        }
+        java.util.List<ReentrantLock> held = lockAll(new java.util.ArrayList<>(involved));
+        try {
+            java.util.List<Exception> outcomes = new java.util.ArrayList<>(orders.size());
+            Records records = new Records();
+            for (StandingOrder o : orders) {
+                Account src, dst;
+                synchronized (this) {
+                    src = accounts.get(o.getFromAccount());
+                    dst = accounts.get(o.getToAccount());
+                }
+                if (src == null || dst == null || !src.isActive() || !dst.isActive()) {
+                    outcomes.add(new ValidationException("Invalid or inactive destination/source account."));
+                    continue;
+                }
+                if (!debit(src, o.getAmount())) {
+                    outcomes.add(new InsufficientFundsException("Insufficient balance for transfer."));
+                    continue;
+                }
+                credit(dst, o.getAmount());
+                String tag = o.occurrenceTag();
+                long cents = cents(o.getAmount());
+                records.add(src, TransactionType.TRANSFER_OUT, o.getAmount(), -cents,
+                        tag + " to " + dst.getAccountNumber(), dst.getAccountNumber());
+                records.add(dst, TransactionType.TRANSFER_IN, o.getAmount(), cents,
+                        tag + " from " + src.getAccountNumber(), src.getAccountNumber());
+                outcomes.add(null);
+            }
+            if (!records.isEmpty()) {
+                try {
+                    records.write();
+                } catch (IOException e) {
+                    // records already in a hot account's journal will be written by its next writer
+                    // (or the fold), so the batch is paid: undoing or rerunning it would pay twice
+                    if (records.isQueued()) {
+                        logger.severe("Standing orders: batch paid, records left queued: " + e.getMessage());
+                        return outcomes;
+                    }
+                    // otherwise nothing is in the log: undo the batch in memory, so that running it
+                    // again cannot pay anything twice
+                    for (int i = orders.size() - 1; i >= 0; i--) {
+                        if (outcomes.get(i) != null) continue;
+                        StandingOrder o = orders.get(i);
+                        Account src, dst;
+                        synchronized (this) {
+                            src = accounts.get(o.getFromAccount());
+                            dst = accounts.get(o.getToAccount());
+                        }
+                        debit(dst, o.getAmount());
+                        credit(src, o.getAmount());
+                    }
+                    try {
+                        persistAccounts();
+                    } catch (IOException again) {
+                        e.addSuppressed(again);
+                    }
+                    throw e;
+                }
+                try {
+                    persistAccounts();
+                } catch (IOException e) {
+                    // the log has the batch, so it is paid; recoverFromLog repairs saved balances
+                    logger.severe("Standing orders: batch paid, account save failed: " + e.getMessage());
+                }
+                logger.info("Standing orders: " + records.written().size() / 2 + " of " + orders.size() + " paid in one batch");
+            }
+            return outcomes;
+        } finally {
+            unlockAll(held);
+        }
+    }
+
+    // Checks a transfer that will run later: amount, and both accounts exist and are active.
+    void checkTransfer(String fromAcc, String toAcc, BigDecimal amount) throws ValidationException {
+        if (fromAcc == null || fromAcc.equals(toAcc)) throw new ValidationException("Cannot transfer to same account.");
+        checkAmount(amount);
+        Account src, dst;
+        synchronized (this) {
+            src = accounts.get(fromAcc);
+            dst = accounts.get(toAcc);
+        }
+        if (src == null || dst == null || !src.isActive() || !dst.isActive()) {
+            throw new ValidationException("Invalid or inactive destination/source account.");
+        }
     }
 
     // --- helpers ---
 
+    private static long cents(BigDecimal amount) {
+        return Account.normalize(amount).unscaledValue().longValueExact();
+    }
+
+    // The log records of one operation. A record of a hot account goes through the account's
+    // journal, which gives it an exact balanceAfter (see HotJournal); the others carry the
+    // account's balance as it is now, so add() is called under the account lock.
+    private final class Records {
+        private final LocalDateTime now = LocalDateTime.now();
+        private final java.util.List<Transaction> plain = new java.util.ArrayList<>();
+        private final java.util.List<Runnable> hotRecords = new java.util.ArrayList<>();
+        private final java.util.Map<HotJournal, Long> tickets = new java.util.LinkedHashMap<>();
+        private final java.util.List<Transaction> written = new java.util.ArrayList<>();
+
+        void add(Account acc, TransactionType type, BigDecimal amount, long deltaCents, String details,
+                 String counterparty) {
+            StripedBalance striped = hot.get(acc.getAccountNumber());
+            if (striped == null) {
+                plain.add(new Transaction(now, acc.getAccountNumber(), type, amount, acc.getBalance(), details,
+                        counterparty));
+            } else {
+                HotJournal journal = striped.journal();
+                hotRecords.add(() -> tickets.put(journal, journal.add(now, acc.getAccountNumber(), type, amount,
+                        deltaCents, details, counterparty, written)));
+            }
+        }
+
+        boolean isEmpty() {
+            return plain.isEmpty() && hotRecords.isEmpty() && tickets.isEmpty();
+        }
+
+        // True once a record has gone into a journal and can no longer be taken back.
+        boolean isQueued() {
+            return !tickets.isEmpty();
+        }
+
+        // Hands the hot accounts' records to their journals, which fixes their order in the log.
+        void queue() {
+            for (Runnable r : hotRecords) r.run();
+            hotRecords.clear();
+        }
+
+        // Appends the plain records, then waits for the journals to write the hot ones.
+        void write() throws IOException {
+            if (plain.size() == 1) store.appendTransaction(plain.get(0));
+            else if (!plain.isEmpty()) store.appendTransactions(plain);
+            written.addAll(plain);
+            plain.clear();
+            queue();
+            for (java.util.Map.Entry<HotJournal, Long> e : tickets.entrySet()) e.getKey().write(e.getValue(), store);
+        }
+
+        java.util.List<Transaction> written() {
+            return written;
+        }
+    }
+
+    // Snapshot and save as one step, so a slower writer can never overwrite a newer file
+    // with an older snapshot. Callers must not hold the Bank monitor. A replica's ack is awaited
+    // after the lock is released, so one slow follower does not hold up every other save.
+    // Saves are group-committed: a caller whose change went into a snapshot saved while it
+    // waited for the lock returns without saving again, so concurrent credits to a hot account
+    // share one rewrite of accounts.csv instead of queueing one each.
+    private void persistAccounts() throws IOException {
+        long change = changes.incrementAndGet();
+        synchronized (persistLock) {
+            if (savedChanges < change) {
+                // each change counted so far was made before it was counted: this snapshot has it
+                long covered = changes.get();
+                store.saveAccounts(snapshotAccounts());
+                savedChanges = covered;
+            }
+        }
+        store.awaitReplication();
+    }
+
+    private java.util.List<ReentrantLock> lockAll(java.util.List<String> orderedAccountNumbers) {
+        java.util.List<ReentrantLock> held = new java.util.ArrayList<>(orderedAccountNumbers.size());
+        for (String accountNumber : orderedAccountNumbers) {
+            ReentrantLock lock = lockManager.lockFor(accountNumber);
+            lock.lock();
+            held.add(lock);
+        }
+        return held;
+    }
+
+    private static void unlockAll(java.util.List<ReentrantLock> held) {
+        for (int i = held.size() - 1; i >= 0; i--) held.get(i).unlock();
+    }
+
     private String generateAccountNumber() {
         // naive generator: 6-digit starting at 100000+
         int base = 100000 + accounts.size() + new java.util.Random().nextInt(900);
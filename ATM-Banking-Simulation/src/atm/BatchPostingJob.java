@@ -0,0 +1,190 @@
+/*
+ * BatchPostingJob.java - End-of-period interest/fee posting over all active customer accounts.
+ *
+ * Accounts are split into chunks of consecutive account numbers that run in parallel. Each chunk
+ * is posted under its accounts' locks and persisted once. The checkpoint records the chunk's
+ * account numbers twice: "begin" before posting and "done" after, so an interrupted run can
+ * simply be started again with the same run id. Accounts of finished chunks are skipped (and an
+ * account created since then is still posted). For a chunk that began but never finished, the
+ * history decides: an account that already has this run's record, recognized by its type and
+ * the "(run <id>)" tag in the details, is not posted again. A chunk's records reach the log
+ * before its balances are saved, so after a crash between the two Bank.recoverFromLog brings the
+ * balances up to the history this check reads.
+ */
+package atm;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+
+public class BatchPostingJob implements Callable<BatchPostingJob.Result> {
+    public enum Kind { INTEREST, FEE }
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final BigDecimal HUNDRED = new BigDecimal("100");
+
+    private final Bank bank;
+    private final DataStore store;
+    private final Logger logger;
+    private final Kind kind;
+    private final BigDecimal value;   // percent of balance for INTEREST, flat amount for FEE
+    private final String runId;
+    private final int chunkSize;
+    private final int parallelism;
+
+    BatchPostingJob(Bank bank, DataStore store, Logger logger, Kind kind, BigDecimal value,
+                    String runId, int chunkSize, int parallelism) {
+        this.bank = bank;
+        this.store = store;
+        this.logger = logger;
+        this.kind = kind;
+        this.value = value;
+        this.runId = runId;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public BatchPostingJob withChunking(int chunkSize, int parallelism) {
+        return new BatchPostingJob(bank, store, logger, kind, value, runId, chunkSize, parallelism);
+    }
+
+    public String getJobId() { return kind.name().toLowerCase() + "-" + runId; }
+
+    @Override
+    public Result call() throws IOException, InterruptedException {
+        String jobId = getJobId();
+        Set<String> done = new HashSet<>();
+        Set<String> begun = new HashSet<>();
+        int doneChunks = 0;
+        for (String entry : store.loadCheckpoint(jobId)) {
+            String[] p = entry.split(" ");
+            if (p[0].equals("done")) {
+                done.addAll(Arrays.asList(p).subList(1, p.length));
+                doneChunks++;
+            } else if (p[0].equals("begin")) {
+                begun.addAll(Arrays.asList(p).subList(1, p.length));
+            }
+        }
+
+        List<String> pending = new ArrayList<>();
+        int recovered = 0;
+        for (Account a : bank.snapshotAccounts()) {
+            if (!a.isActive() || a.getRole() != Account.Role.USER) continue;
+            String acc = a.getAccountNumber();
+            if (done.contains(acc)) continue;
+            if (begun.contains(acc) && alreadyPosted(acc)) {
+                recovered++;   // posted by a run that died before its checkpoint
+                continue;
+            }
+            pending.add(acc);
+        }
+        Collections.sort(pending);
+        if (recovered > 0) logger.info("Posting job " + jobId + ": " + recovered + " accounts already posted before the restart");
+
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i += chunkSize) {
+            chunks.add(pending.subList(i, Math.min(pending.size(), i + chunkSize)));
+        }
+        logger.info("Posting job " + jobId + ": " + pending.size() + " accounts in " + chunks.size()
+                + " chunks (" + doneChunks + " chunks already checkpointed)");
+
+        Result result = new Result(doneChunks);
+        if (chunks.isEmpty()) return result;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, chunks.size()));
+        try {
+            List<Future<List<Transaction>>> futures = new ArrayList<>(chunks.size());
+            for (List<String> chunk : chunks) {
+                futures.add(pool.submit(() -> runChunk(jobId, chunk)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    List<Transaction> posted = futures.get(i).get();
+                    result.chunksRun++;
+                    result.accountsPosted += posted.size();
+                    result.accountsSkipped += chunks.get(i).size() - posted.size();
+                    for (Transaction tx : posted) result.totalAmount = result.totalAmount.add(tx.getAmount());
+                } catch (ExecutionException e) {
+                    result.chunksFailed++;
+                    logger.severe("Posting job " + jobId + " chunk " + i + " failed: " + e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        logger.info("Posting job " + jobId + " finished: " + result);
+        return result;
+    }
+
+    private List<Transaction> runChunk(String jobId, List<String> chunk) throws IOException {
+        String accounts = String.join(" ", chunk);
+        store.appendCheckpoint(jobId, "begin " + accounts);
+        List<Transaction> posted = bank.postChunk(chunk, transactionType(), deltaFunction(), details());
+        store.appendCheckpoint(jobId, "done " + accounts);
+        return posted;
+    }
+
+    // Whether the account's history already holds this run's record.
+    private boolean alreadyPosted(String accountNumber) throws IOException {
+        TransactionQuery query = TransactionQuery.all().withTypes(transactionType())
+                .withPage(0, TransactionQuery.MAX_PAGE_SIZE);
+        while (true) {
+            TransactionPage page = store.searchTransactions(accountNumber, query);
+            for (Transaction tx : page.getItems()) {
+                if (tx.getDetails().endsWith(runTag())) return true;
+            }
+            if (!page.hasNext()) return false;
+            query = query.nextPage();
+        }
+    }
+
+    private TransactionType transactionType() {
+        return kind == Kind.INTEREST ? TransactionType.INTEREST : TransactionType.FEE;
+    }
+
+    private UnaryOperator<BigDecimal> deltaFunction() {
+        if (kind == Kind.INTEREST) {
+            return balance -> balance.multiply(value).divide(HUNDRED, 2, RoundingMode.HALF_EVEN);
+        }
+        BigDecimal fee = value.negate();
+        return balance -> fee;
+    }
+
+    private String details() {
+        return (kind == Kind.INTEREST ? "Interest " + value.toPlainString() + "% " : "Maintenance fee ")
+                + runTag();
+    }
+
+    private String runTag() {
+        return "(run " + runId + ")";
+    }
+
+    public static final class Result {
+        private final int chunksResumed;
+        private int chunksRun;
+        private int chunksFailed;
+        private int accountsPosted;
+        private int accountsSkipped;
+        private BigDecimal totalAmount = Account.normalize(BigDecimal.ZERO);
+
+        private Result(int chunksResumed) { this.chunksResumed = chunksResumed; }
+
+        public int getChunksResumed() { return chunksResumed; }
+        public int getChunksRun() { return chunksRun; }
+        public int getChunksFailed() { return chunksFailed; }
+        public int getAccountsPosted() { return accountsPosted; }
+        public int getAccountsSkipped() { return accountsSkipped; }
+        public BigDecimal getTotalAmount() { return totalAmount; }
+
+        @Override
+        public String toString() {
+            return "posted=" + accountsPosted + " skipped=" + accountsSkipped + " total=" + totalAmount.toPlainString()
+                    + " chunks=" + chunksRun + " failed=" + chunksFailed + " resumed=" + chunksResumed;
+        }
+    }
+}
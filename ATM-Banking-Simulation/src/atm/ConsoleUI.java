@@ -5,6 +5,7 @@ package atm;
 
 import atm.exceptions.AuthenticationException;
 import atm.exceptions.InsufficientFundsException;
+import atm.exceptions.ServiceBusyException;
 import atm.exceptions.ValidationException;
 
 import java.io.IOException;
@@ -17,10 +18,21 @@ import java.util.logging.Logger;
 
 public class ConsoleUI {
     private final ATM atm;
+    private final SessionManager sessions;   // null: a login stays valid until logout
+    private final StandingOrderEngine standingOrders;   // null: not offered (e.g. on a follower)
     private final Logger logger;
+    private String sessionToken;
 
     public ConsoleUI(ATM atm, Logger logger) {
-        this.atm = atm; this.logger = logger;
+        this(atm, null, logger);
+    }
+
+    public ConsoleUI(ATM atm, SessionManager sessions, Logger logger) {
+        this(atm, sessions, null, logger);
+    }
+
+    public ConsoleUI(ATM atm, SessionManager sessions, StandingOrderEngine standingOrders, Logger logger) {
+        this.atm = atm; this.sessions = sessions; this.standingOrders = standingOrders; this.logger = logger;
     }
 
     public void startInteractive() {
@@ -37,8 +49,9 @@ public class ConsoleUI {
 
                 User user;
                 try {
-                    user = atm.login(acc, pin);
-                } catch (AuthenticationException | IOException e) {
+                    // the session opens before the login is audited: a refused session is a failed login
+                    user = sessions == null ? atm.login(acc, pin) : atm.login(acc, pin, u -> sessionToken = sessions.open(u));
+                } catch (AuthenticationException | IOException | ServiceBusyException e) {
                     System.out.println("Login failed: " + e.getMessage());
                     continue;
                 }
@@ -53,15 +66,18 @@ public class ConsoleUI {
                         session = userMenu(sc, user);
                     }
                 }
+                if (sessionToken != null) sessions.close(sessionToken);
+                sessionToken = null;
             }
             System.out.println("Goodbye!");
         }
     }
 
     private boolean userMenu(Scanner sc, User user) {
-        System.out.println("\n1) Balance  2) Deposit  3) Withdraw  4) Transfer  5) Last N tx  6) Logout");
+        System.out.println("\n1) Balance  2) Deposit  3) Withdraw  4) Transfer  5) Last N tx  6) Logout  7) Search tx  8) Standing orders");
         System.out.print("Choose: ");
         String choice = sc.next().trim();
+        if (sessionExpired()) return false;
         try {
             switch (choice) {
                 case "1" -> {
@@ -101,9 +117,11 @@ public class ConsoleUI {
                     System.out.println("Logged out.");
                     return false;
                 }
+                case "7" -> search(sc, q -> atm.search(user, q));
+                case "8" -> standingOrders(sc, user.getAccount().getAccountNumber());
                 default -> System.out.println("Invalid choice.");
             }
-        } catch (ValidationException | InsufficientFundsException e) {
+        } catch (ValidationException | InsufficientFundsException | ServiceBusyException e) {
             System.out.println("Error: " + e.getMessage());
         } catch (IOException e) {
             System.out.println("I/O Error: " + e.getMessage());
@@ -115,9 +133,10 @@ public class ConsoleUI {
     }
 
     private boolean adminMenu(Scanner sc, User user) {
-        System.out.println("\nADMIN: 1) Balance  2) Deposit  3) Withdraw  4) Transfer  5) Last N  6) Create Acct  7) Delete Acct  8) Simulate  9) Logout");
+        System.out.println("\nADMIN: 1) Balance  2) Deposit  3) Withdraw  4) Transfer  5) Last N  6) Create Acct  7) Delete Acct  8) Simulate  9) Logout  10) Post Interest  11) Post Fee  12) Load Stats  13) Search Acct  14) Hot Acct  15) Standing orders");
         System.out.print("Choose: ");
         String choice = sc.next().trim();
+        if (sessionExpired()) return false;
         try {
             switch (choice) {
                 case "1","2","3","4","5" -> { return userMenu(sc, user); }
@@ -147,6 +166,38 @@ public class ConsoleUI {
                     System.out.println("Logged out.");
                     return false;
                 }
+                case "10" -> {
+                    BigDecimal rate = readAmount(sc, "Interest rate in % for this period: ");
+                    System.out.print("Run id (e.g., 2024-06; rerun the same id to resume): ");
+                    String runId = sc.next().trim();
+                    System.out.println("Interest posted: " + atm.adminPostInterest(rate, runId));
+                }
+                case "11" -> {
+                    BigDecimal fee = readAmount(sc, "Maintenance fee per account: ");
+                    System.out.print("Run id (e.g., 2024-06; rerun the same id to resume): ");
+                    String runId = sc.next().trim();
+                    System.out.println("Fees posted: " + atm.adminPostFee(fee, runId));
+                }
+                case "12" -> {
+                    List<AdmissionController.ClassStats> stats = atm.adminLoadStats();
+                    if (stats.isEmpty()) System.out.println("(Admission control is off)");
+                    else stats.forEach(System.out::println);
+                }
+                case "13" -> {
+                    System.out.print("Account to search: ");
+                    String acc = sc.next().trim();
+                    search(sc, q -> atm.adminSearch(acc, q));
+                }
+                case "14" -> {
+                    System.out.println("Hot accounts: " + atm.adminHotAccounts());
+                    System.out.print("Account to change: ");
+                    String acc = sc.next().trim();
+                    System.out.print("Hot? (y/n): ");
+                    boolean hot = sc.next().trim().equalsIgnoreCase("y");
+                    atm.adminSetHot(acc, hot);
+                    System.out.println(hot ? "Credits to " + acc + " are now striped." : "Account " + acc + " is back to normal.");
+                }
+                case "15" -> standingOrders(sc, null);
                 default -> System.out.println("Invalid choice.");
             }
         } catch (Exception e) {
@@ -156,6 +207,108 @@ public class ConsoleUI {
         return true;
     }
 
+    // Checked after every prompt, since the user may have been idle there.
+    private boolean sessionExpired() {
+        if (sessionToken == null) return false;
+        try {
+            sessions.resolve(sessionToken);
+            return false;
+        } catch (AuthenticationException e) {
+            System.out.println(e.getMessage());
+            return true;
+        }
+    }
+
+    private interface Search {
+        TransactionPage run(TransactionQuery query) throws ValidationException, IOException;
+    }
+
+    // Reads the filters ('-' skips one), then pages through the results newest first.
+    private static void search(Scanner sc, Search search) throws ValidationException, IOException {
+        TransactionQuery query = TransactionQuery.all();
+        try {
+            String type = readOptional(sc, "Type (e.g. TRANSFER_OUT, - for any): ");
+            if (type != null) query = query.withTypes(TransactionType.valueOf(type.toUpperCase()));
+            String min = readOptional(sc, "Min amount (- for none): ");
+            String max = readOptional(sc, "Max amount (- for none): ");
+            query = query.withAmountBetween(min == null ? null : new BigDecimal(min), max == null ? null : new BigDecimal(max));
+            String from = readOptional(sc, "From date yyyy-MM-dd (- for none): ");
+            String to = readOptional(sc, "To date yyyy-MM-dd, inclusive (- for none): ");
+            query = query.withDateBetween(from == null ? null : java.time.LocalDate.parse(from).atStartOfDay(),
+                    to == null ? null : java.time.LocalDate.parse(to).plusDays(1).atStartOfDay());
+            query = query.withCounterparty(readOptional(sc, "Counterparty account (- for any): "));
+        } catch (IllegalArgumentException | java.time.DateTimeException e) {
+            throw new ValidationException("Invalid filter: " + e.getMessage());
+        }
+        while (true) {
+            TransactionPage page = search.run(query);
+            if (page.getTotalMatches() == 0) {
+                System.out.println("(No matching transactions)");
+                return;
+            }
+            System.out.println("Results, " + page + ":");
+            page.getItems().forEach(tx -> System.out.printf("%s  %-14s  %10s  Bal:%s  %s%n",
+                    tx.getTimestamp(), tx.getType(), tx.getAmount(), tx.getBalanceAfter(), tx.getDetails()));
+            if (!page.hasNext()) return;
+            System.out.print("Next page? (y/n): ");
+            if (!sc.next().trim().equalsIgnoreCase("y")) return;
+            query = query.nextPage();
+        }
+    }
+
+    // Create, list or cancel the orders paying out of fromAccount; null (admin) works on any account.
+    private void standingOrders(Scanner sc, String fromAccount) throws ValidationException, IOException {
+        if (standingOrders == null) {
+            System.out.println("Standing orders are not available here.");
+            return;
+        }
+        System.out.print("1) Create  2) List  3) Cancel: ");
+        String choice = sc.next().trim();
+        if (sessionExpired()) return;
+        switch (choice) {
+            case "1" -> {
+                String from = fromAccount;
+                if (from == null) {
+                    System.out.print("From Account #: ");
+                    from = sc.next().trim();
+                }
+                System.out.print("To Account #: ");
+                String to = sc.next().trim();
+                BigDecimal amt = readAmount(sc, "Amount: ");
+                StandingOrder.Frequency frequency;
+                java.time.LocalDateTime first;
+                try {
+                    System.out.print("Frequency (ONCE/DAILY/WEEKLY/MONTHLY): ");
+                    frequency = StandingOrder.Frequency.valueOf(sc.next().trim().toUpperCase());
+                    String date = readOptional(sc, "First run yyyy-MM-dd (- for now): ");
+                    first = date == null ? java.time.LocalDateTime.now() : java.time.LocalDate.parse(date).atStartOfDay();
+                } catch (IllegalArgumentException | java.time.DateTimeException e) {
+                    throw new ValidationException("Invalid schedule: " + e.getMessage());
+                }
+                StandingOrder o = standingOrders.create(from, to, amt, frequency, first);
+                System.out.println("Standing order created: " + o);
+            }
+            case "2" -> {
+                List<StandingOrder> list = standingOrders.list(fromAccount);
+                if (list.isEmpty()) System.out.println("(No standing orders)");
+                else list.forEach(System.out::println);
+            }
+            case "3" -> {
+                System.out.print("Standing order id to cancel: ");
+                long id = Long.parseLong(sc.next().trim());
+                standingOrders.cancel(fromAccount, id);
+                System.out.println("Standing order cancelled.");
+            }
+            default -> System.out.println("Invalid choice.");
+        }
+    }
+
+    private static String readOptional(Scanner sc, String prompt) {
+        System.out.print(prompt);
+        String s = sc.next().trim();
+        return s.equals("-") ? null : s;
+    }
+
     private static BigDecimal readAmount(Scanner sc, String prompt) {
         System.out.print(prompt);
         return new BigDecimal(sc.next().trim());
@@ -164,6 +317,7 @@ public class ConsoleUI {
     // Optional multithreading simulation (small demo)
     private void simulateConcurrent(int threads) {
         System.out.println("Starting " + threads + " concurrent simulated users...");
+        ATM sim = atm.forBulkTraffic();
         String[] demoAcc = {"100001","100002","100003"};
         java.util.Random rnd = new java.util.Random();
         java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(threads);
@@ -172,7 +326,7 @@ public class ConsoleUI {
                 try {
                     String acc = demoAcc[rnd.nextInt(demoAcc.length)];
                     // all demo accounts use their known pins from accounts.csv comment
-                    User u = atm.login(acc, switch (acc) {
+                    User u = sim.login(acc, switch (acc) {
                         case "100001" -> "1111";
                         case "100002" -> "2222";
                         case "100003" -> "3333";
@@ -181,9 +335,9 @@ public class ConsoleUI {
                     for (int k = 0; k < 5; k++) {
                         int op = rnd.nextInt(3);
                         switch (op) {
-                            case 0 -> atm.deposit(u, new BigDecimal("1.00"));
-                            case 1 -> { try { atm.withdraw(u, new BigDecimal("1.00")); } catch (Exception ignore) {} }
-                            case 2 -> atm.balance(u);
+                            case 0 -> sim.deposit(u, new BigDecimal("1.00"));
+                            case 1 -> { try { sim.withdraw(u, new BigDecimal("1.00")); } catch (Exception ignore) {} }
+                            case 2 -> sim.balance(u);
                         }
                     }
                 } catch (Exception ignored) {
@@ -10,7 +10,42 @@ public interface DataStore {
     java.util.List<Account> loadAccounts() throws IOException;
     void saveAccounts(java.util.List<Account> accounts) throws IOException;
 
+    // Waits until the latest saveAccounts has reached a replica, where the store replicates and
+    // requires acknowledgement. Kept apart from saveAccounts so that callers can wait after
+    // releasing whatever lock serializes their saves.
+    default void awaitReplication() throws IOException { }
+
     void appendTransaction(Transaction tx) throws IOException;
 
+    // Appends several records with a single write (used by batch jobs).
+    void appendTransactions(java.util.List<Transaction> txs) throws IOException;
+
     java.util.List<Transaction> loadLastNTransactions(String accountNumber, int n) throws IOException;
+
+    // Streams every stored transaction in log order (used to build indexes at startup).
+    void forEachTransaction(java.util.function.Consumer<Transaction> action) throws IOException;
+
+    // Filtered, paged history of one account, newest first. The default scans the whole log.
+    default TransactionPage searchTransactions(String accountNumber, TransactionQuery query) throws IOException {
+        java.util.List<Transaction> history = loadLastNTransactions(accountNumber, Integer.MAX_VALUE);
+        java.util.List<Transaction> items = new java.util.ArrayList<>();
+        long skip = (long) query.getPage() * query.getPageSize();
+        long matched = 0;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            Transaction tx = history.get(i);
+            if (!query.matches(tx)) continue;
+            if (matched >= skip && items.size() < query.getPageSize()) items.add(tx);
+            matched++;
+        }
+        return new TransactionPage(items, query.getPage(), query.getPageSize(), matched);
+    }
+
+    // Standing orders: load returns the latest state of each order; save records the given orders'
+    // new state (an append, so a batch costs one write however large the book is).
+    java.util.List<StandingOrder> loadStandingOrders() throws IOException;
+    void saveStandingOrders(java.util.List<StandingOrder> changed) throws IOException;
+
+    // Restart checkpoints for long-running jobs: one entry per completed unit of work.
+    java.util.Set<String> loadCheckpoint(String jobId) throws IOException;
+    void appendCheckpoint(String jobId, String entry) throws IOException;
 }
@@ -14,12 +14,19 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 public class FileDataStore implements DataStore {
+    private static final String STANDING_ORDERS_HEADER =
+            "id,fromAccount,toAccount,amount,frequency,start,runs,attempt,nextRun,status\n";
+
     private final Path accountsPath;
     private final Path transactionsPath;
+    private final Path checkpointDir;
+    private final Path standingOrdersPath;
 
     public FileDataStore(Path dataDir) throws IOException {
         this.accountsPath = dataDir.resolve("accounts.csv");
         this.transactionsPath = dataDir.resolve("transactions.csv");
+        this.checkpointDir = dataDir.resolve("checkpoints");
+        this.standingOrdersPath = dataDir.resolve("standing_orders.csv");
         if (!Files.exists(dataDir)) Files.createDirectories(dataDir);
         if (!Files.exists(accountsPath)) {
             Files.createFile(accountsPath);
@@ -43,15 +50,7 @@ public class FileDataStore implements DataStore {
         for (int i = 1; i < lines.size(); i++) { // skip header
             String line = lines.get(i).trim();
             if (line.isEmpty()) continue;
-            String[] parts = splitCsv(line, 7);
-            String acc = parts[0];
-            String name = parts[1];
-            Role role = Role.valueOf(parts[2]);
-            BigDecimal bal = new BigDecimal(parts[3]);
-            String pinHash = parts[4];
-            String salt = parts[5];
-            boolean active = Boolean.parseBoolean(parts[6]);
-            result.add(new Account(acc, name, role, bal, pinHash, salt, active));
+            result.add(parseAccount(line));
         }
         return result;
     }
@@ -61,13 +60,7 @@ public class FileDataStore implements DataStore {
         StringBuilder sb = new StringBuilder();
         sb.append("accountNumber,name,role,balance,pinHash,salt,isActive\n");
         for (Account a : accounts) {
-            sb.append(a.getAccountNumber()).append(",")
-              .append(escape(a.getName())).append(",")
-              .append(a.getRole().name()).append(",")
-              .append(a.getBalance().toPlainString()).append(",")
-              .append(a.getPinHash()).append(",")
-              .append(a.getSalt()).append(",")
-              .append(a.isActive()).append("\n");
+            sb.append(formatAccount(a)).append("\n");
         }
         Files.writeString(accountsPath, sb.toString(), StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING);
     }
@@ -78,6 +71,14 @@ public class FileDataStore implements DataStore {
                 StandardCharsets.UTF_8, StandardOpenOption.APPEND);
     }
 
+    @Override
+    public synchronized void appendTransactions(java.util.List<Transaction> txs) throws IOException {
+        if (txs.isEmpty()) return;
+        StringBuilder sb = new StringBuilder();
+        for (Transaction tx : txs) sb.append(tx.toCsvLine()).append("\n");
+        Files.writeString(transactionsPath, sb.toString(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
     @Override
     public synchronized java.util.List<Transaction> loadLastNTransactions(String accountNumber, int n) throws IOException {
         // read all then filter the last n for the account (simple & fine for small projects)
@@ -88,14 +89,98 @@ public class FileDataStore implements DataStore {
             if (line.isEmpty()) continue;
             String[] p = splitCsv(line, 7);
             if (!java.util.Objects.equals(p[1], accountNumber)) continue;
-            all.add(parseTx(line));
+            all.add(parseTransaction(line));
         }
         // keep last n by time order (already chronological)
         int start = Math.max(0, all.size() - n);
         return all.subList(start, all.size());
     }
 
-    private Transaction parseTx(String line) {
+    @Override
+    public synchronized void forEachTransaction(java.util.function.Consumer<Transaction> action) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(transactionsPath, StandardCharsets.UTF_8)) {
+            in.readLine(); // skip header
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) action.accept(parseTransaction(line));
+            }
+        }
+    }
+
+    // Replays the journal (last line per id wins) and rewrites it without superseded or finished
+    // orders once those make up most of the file.
+    @Override
+    public synchronized java.util.List<StandingOrder> loadStandingOrders() throws IOException {
+        if (!Files.exists(standingOrdersPath)) return new java.util.ArrayList<>();
+        java.util.Map<Long, StandingOrder> latest = new java.util.LinkedHashMap<>();
+        java.util.List<String> lines = Files.readAllLines(standingOrdersPath, StandardCharsets.UTF_8);
+        for (int i = 1; i < lines.size(); i++) { // skip header
+            String line = lines.get(i).trim();
+            if (line.isEmpty()) continue;
+            StandingOrder o = parseStandingOrder(line);
+            latest.put(o.getId(), o);
+        }
+        java.util.List<StandingOrder> live = new java.util.ArrayList<>();
+        StandingOrder highest = null;
+        for (StandingOrder o : latest.values()) {
+            if (o.isActive()) live.add(o);
+            if (highest == null || o.getId() > highest.getId()) highest = o;
+        }
+        // compaction keeps the highest id even when finished, so that ids are never handed out twice
+        if (highest != null && !highest.isActive()) live.add(highest);
+        if (lines.size() - 1 > 2 * live.size() + 64) {
+            StringBuilder sb = new StringBuilder(STANDING_ORDERS_HEADER);
+            for (StandingOrder o : live) sb.append(formatStandingOrder(o)).append("\n");
+            Path tmp = standingOrdersPath.resolveSibling("standing_orders.csv.tmp");
+            Files.writeString(tmp, sb.toString(), StandardCharsets.UTF_8);
+            Files.move(tmp, standingOrdersPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return new java.util.ArrayList<>(latest.values());
+    }
+
+    @Override
+    public synchronized void saveStandingOrders(java.util.List<StandingOrder> changed) throws IOException {
+        if (changed.isEmpty()) return;
+        StringBuilder sb = new StringBuilder();
+        if (!Files.exists(standingOrdersPath)) sb.append(STANDING_ORDERS_HEADER);
+        for (StandingOrder o : changed) sb.append(formatStandingOrder(o)).append("\n");
+        Files.writeString(standingOrdersPath, sb.toString(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized java.util.Set<String> loadCheckpoint(String jobId) throws IOException {
+        Path file = checkpointDir.resolve(jobId + ".chk");
+        java.util.Set<String> entries = new java.util.LinkedHashSet<>();
+        if (!Files.exists(file)) return entries;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) entries.add(line.trim());
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized void appendCheckpoint(String jobId, String entry) throws IOException {
+        if (!Files.exists(checkpointDir)) Files.createDirectories(checkpointDir);
+        Files.writeString(checkpointDir.resolve(jobId + ".chk"), entry + "\n",
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // --- row codecs (shared with replication) ---
+
+    static String formatAccount(Account a) {
+        return a.getAccountNumber() + "," + escape(a.getName()) + "," + a.getRole().name() + ","
+                + a.getBalance().toPlainString() + "," + a.getPinHash() + "," + a.getSalt() + "," + a.isActive();
+    }
+
+    static Account parseAccount(String line) {
+        String[] parts = splitCsv(line, 7);
+        return new Account(parts[0], parts[1], Role.valueOf(parts[2]), new BigDecimal(parts[3]),
+                parts[4], parts[5], Boolean.parseBoolean(parts[6]));
+    }
+
+    static Transaction parseTransaction(String line) {
         String[] p = splitCsv(line, 7);
         LocalDateTime ts = LocalDateTime.parse(p[0]);
         String acc = p[1];
@@ -107,6 +192,20 @@ public class FileDataStore implements DataStore {
         return new Transaction(ts, acc, type, amt, balAfter, details, cp);
     }
 
+    static String formatStandingOrder(StandingOrder o) {
+        return String.join(",", String.valueOf(o.getId()), o.getFromAccount(), o.getToAccount(),
+                o.getAmount().toPlainString(), o.getFrequency().name(), o.getStart().toString(),
+                String.valueOf(o.getRuns()), String.valueOf(o.getAttempt()), o.getNextRun().toString(),
+                o.getStatus().name());
+    }
+
+    static StandingOrder parseStandingOrder(String line) {
+        String[] p = splitCsv(line, 10);
+        return new StandingOrder(Long.parseLong(p[0]), p[1], p[2], new BigDecimal(p[3]),
+                StandingOrder.Frequency.valueOf(p[4]), LocalDateTime.parse(p[5]), Integer.parseInt(p[6]),
+                Integer.parseInt(p[7]), LocalDateTime.parse(p[8]), StandingOrder.Status.valueOf(p[9]));
+    }
+
     // --- helpers ---
 
     private static String escape(String s) {
@@ -0,0 +1,28 @@
+/*
+ * HashAccountTable.java - Default AccountTable backed by a HashMap of Account objects.
+ */
+package atm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class HashAccountTable implements AccountTable {
+    private final Map<String, Account> accounts = new HashMap<>();
+
+    @Override
+    public Account get(String accountNumber) { return accounts.get(accountNumber); }
+
+    @Override
+    public void put(Account account) { accounts.put(account.getAccountNumber(), account); }
+
+    @Override
+    public boolean containsKey(String accountNumber) { return accounts.containsKey(accountNumber); }
+
+    @Override
+    public int size() { return accounts.size(); }
+
+    @Override
+    public List<Account> values() { return new ArrayList<>(accounts.values()); }
+}
@@ -0,0 +1,98 @@
+/*
+ * HotAccountDetector.java - Marks accounts hot when their credits keep queueing on the lock.
+ *
+ * Bank reports every credit and whether the account lock was already held at that moment.
+ * Once per window the detector marks accounts with at least threshold contended credits as hot.
+ * It returns an account it marked itself to normal after a window with fewer than coolBelow
+ * credits (by default threshold/8, but at least 2: a lone credit has nothing to contend with).
+ * Accounts an admin marked are left alone.
+ */
+package atm;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+public class HotAccountDetector implements Closeable {
+    private static final class Counts {
+        final LongAdder credits = new LongAdder();
+        final LongAdder contended = new LongAdder();
+    }
+
+    private final Bank bank;
+    private final long threshold;
+    private final long coolBelow;
+    private final Logger logger;
+    private final ConcurrentHashMap<String, Counts> window = new ConcurrentHashMap<>();
+    private final Set<String> marked = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService timer;
+
+    public HotAccountDetector(Bank bank, long windowMillis, long threshold, Logger logger) {
+        this(bank, windowMillis, threshold, Math.max(2, threshold / 8), logger);
+    }
+
+    public HotAccountDetector(Bank bank, long windowMillis, long threshold, long coolBelow, Logger logger) {
+        this.bank = bank;
+        this.threshold = Math.max(1, threshold);
+        this.coolBelow = Math.max(1, coolBelow);
+        this.logger = logger;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hot-account-detector");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(this::evaluate, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void recordCredit(String accountNumber, boolean contended) {
+        Counts c = window.computeIfAbsent(accountNumber, k -> new Counts());
+        c.credits.increment();
+        if (contended) c.contended.increment();
+    }
+
+    // Accounts currently hot because of the detector.
+    public Set<String> markedAccounts() { return Set.copyOf(marked); }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    // Closes the current window and promotes / demotes accounts. Runs on the timer thread.
+    void evaluate() {
+        Map<String, Counts> closed = new java.util.HashMap<>();
+        for (String acc : window.keySet()) {
+            Counts c = window.remove(acc);
+            if (c != null) closed.put(acc, c);
+        }
+        for (Map.Entry<String, Counts> e : closed.entrySet()) {
+            String acc = e.getKey();
+            long contended = e.getValue().contended.sum();
+            if (contended >= threshold && !bank.isHot(acc) && toggle(acc, true)) {
+                marked.add(acc);
+                logger.info("Hot account detected: " + acc + " (" + contended + " contended credits)");
+            }
+        }
+        for (String acc : marked) {
+            Counts c = closed.get(acc);
+            if ((c == null || c.credits.sum() < coolBelow) && toggle(acc, false)) {
+                marked.remove(acc);
+                logger.info("Hot account cooled down: " + acc);
+            }
+        }
+    }
+
+    private boolean toggle(String accountNumber, boolean isHot) {
+        try {
+            bank.setHot(accountNumber, isHot);
+            return true;
+        } catch (Exception e) {
+            logger.warning("Hot account detection failed for " + accountNumber + ": " + e);
+            if (!isHot) marked.remove(accountNumber);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * HotJournal.java - Transaction records of a hot account, kept in balance order.
+ *
+ * Credits to a hot account run in parallel on different stripes, so reading the full balance
+ * after a credit says nothing about where its record lands in the log. The journal keeps its own
+ * running balance instead: every record of the account is added here with its signed amount and
+ * gets the balance after all records added before it. Records are written to the store in the
+ * same order, so replaying the log reproduces every balanceAfter exactly. Writing is a group
+ * commit: whoever writes takes every record queued so far, and callers whose record went along
+ * return at once.
+ */
+package atm;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+final class HotJournal {
+    // guarded by this
+    private long balanceCents;
+    private final ArrayDeque<Transaction> queued = new ArrayDeque<>();
+    private long lastTicket;
+
+    // guarded by writeLock
+    private final Object writeLock = new Object();
+    private long writtenTicket;
+
+    HotJournal(long openingCents) {
+        this.balanceCents = openingCents;
+    }
+
+    // Queues a record, also adding it to added, and returns its ticket for write().
+    synchronized long add(LocalDateTime time, String accountNumber, TransactionType type, BigDecimal amount,
+                          long deltaCents, String details, String counterparty, List<Transaction> added) {
+        balanceCents += deltaCents;
+        Transaction tx = new Transaction(time, accountNumber, type, amount, BigDecimal.valueOf(balanceCents, 2),
+                details, counterparty);
+        queued.addLast(tx);
+        added.add(tx);
+        return ++lastTicket;
+    }
+
+    // Returns once the record with this ticket, and every one queued before it, is in the store.
+    void write(long ticket, DataStore store) throws IOException {
+        synchronized (writeLock) {
+            if (writtenTicket >= ticket) return;
+            List<Transaction> batch;
+            long upTo;
+            synchronized (this) {
+                batch = new ArrayList<>(queued);
+                queued.clear();
+                upTo = lastTicket;
+            }
+            try {
+                store.appendTransactions(batch);
+            } catch (IOException e) {
+                // put them back in front, so the next writer tries them again in order
+                synchronized (this) {
+                    for (int i = batch.size() - 1; i >= 0; i--) queued.addFirst(batch.get(i));
+                }
+                throw e;
+            }
+            writtenTicket = upTo;
+        }
+    }
+
+    // Writes everything queued so far (before the account goes back to normal).
+    void writeAll(DataStore store) throws IOException {
+        long ticket;
+        synchronized (this) {
+            ticket = lastTicket;
+        }
+        write(ticket, store);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * IndexedDataStore.java - DataStore decorator that keeps a TransactionIndex of the log.
+ *
+ * The index is built from the delegate's log when the store is opened and then updated on every
+ * append, so history reads and searches no longer scan the whole file. An append whose records
+ * are in the log but could not be indexed still succeeds; the index is then marked stale and
+ * rebuilt from the log by the next read.
+ */
+package atm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+public class IndexedDataStore implements DataStore {
+    private final DataStore delegate;
+    private final TransactionIndex index;
+    private final Logger logger;
+    private boolean stale;   // guarded by this
+
+    // maxResidentRows bounds the rows held in memory, with dictionary strings weighed as rows;
+    // colder accounts spill to spillDir.
+    public IndexedDataStore(DataStore delegate, Path spillDir, long maxResidentRows, Logger logger) throws IOException {
+        this.delegate = delegate;
+        this.index = new TransactionIndex(spillDir, maxResidentRows, logger);
+        this.logger = logger;
+        load();
+    }
+
+    private void load() throws IOException {
+        try {
+            delegate.forEachTransaction(tx -> {
+                try {
+                    index.add(tx);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public long residentRows() { return index.residentRows(); }
+    public long residentStrings() { return index.residentStrings(); }
+    public long spillCount() { return index.spillCount(); }
+    public long reloadCount() { return index.reloadCount(); }
+
+    @Override
+    public List<Account> loadAccounts() throws IOException {
+        return delegate.loadAccounts();
+    }
+
+    @Override
+    public void saveAccounts(List<Account> accounts) throws IOException {
+        delegate.saveAccounts(accounts);
+    }
+
+    @Override
+    public void awaitReplication() throws IOException {
+        delegate.awaitReplication();
+    }
+
+    // Appends are serialized here so the index sees records in the same order as the log.
+    @Override
+    public synchronized void appendTransaction(Transaction tx) throws IOException {
+        delegate.appendTransaction(tx);
+        indexAppended(List.of(tx));
+    }
+
+    @Override
+    public synchronized void appendTransactions(List<Transaction> txs) throws IOException {
+        delegate.appendTransactions(txs);
+        indexAppended(txs);
+    }
+
+    // The records are in the log already, so an index failure must not fail the append.
+    private void indexAppended(List<Transaction> txs) {
+        if (stale) return;   // the rebuild will read them from the log
+        try {
+            for (Transaction tx : txs) index.add(tx);
+        } catch (IOException | RuntimeException e) {
+            stale = true;
+            logger.warning("Index update failed, rebuilding it on the next read: " + e);
+        }
+    }
+
+    // The index, rebuilt from the log first if an append left it behind.
+    private TransactionIndex index() throws IOException {
+        synchronized (this) {
+            if (stale) {
+                index.clear();
+                load();
+                stale = false;
+                logger.info("Index rebuilt from the log");
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public List<Transaction> loadLastNTransactions(String accountNumber, int n) throws IOException {
+        return index().lastN(accountNumber, n);
+    }
+
+    @Override
+    public void forEachTransaction(Consumer<Transaction> action) throws IOException {
+        delegate.forEachTransaction(action);
+    }
+
+    @Override
+    public TransactionPage searchTransactions(String accountNumber, TransactionQuery query) throws IOException {
+        return index().search(accountNumber, query);
+    }
+
+    @Override
+    public List<StandingOrder> loadStandingOrders() throws IOException {
+        return delegate.loadStandingOrders();
+    }
+
+    @Override
+    public void saveStandingOrders(List<StandingOrder> changed) throws IOException {
+        delegate.saveStandingOrders(changed);
+    }
+
+    @Override
+    public Set<String> loadCheckpoint(String jobId) throws IOException {
+        return delegate.loadCheckpoint(jobId);
+    }
+
+    @Override
+    public void appendCheckpoint(String jobId, String entry) throws IOException {
+        delegate.appendCheckpoint(jobId, entry);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * LoginAudit.java - Decides how successful logins reach the transaction log.
+ *
+ * ALL writes one LOGIN record per login (the original behaviour). SAMPLED writes one out of
+ * every N logins. COALESCED buffers logins per account and writes one LOGIN record per account
+ * per window, e.g. "Successful login x37", in a single bulk append. Those records are stamped
+ * with the flush time and the balance at that time, so they keep the log in order after whatever
+ * the account did during the window. Buffered logins are also flushed when close() is called.
+ */
+package atm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+public class LoginAudit implements Closeable {
+    public enum Mode { ALL, SAMPLED, COALESCED }
+
+    private final DataStore store;
+    private final Mode mode;
+    private final long sampleEvery;
+    private final AtomicLong seen = new AtomicLong();
+    // COALESCED: logins per account since the last flush, and where to read balances at flush time
+    private final ConcurrentHashMap<String, Integer> pending = new ConcurrentHashMap<>();
+    private final Function<String, BigDecimal> balances;
+    private final ScheduledExecutorService flusher;
+    private final Logger logger;
+
+    private LoginAudit(DataStore store, Mode mode, long sampleEvery, long windowMillis,
+                       Function<String, BigDecimal> balances, Logger logger) {
+        this.store = store;
+        this.mode = mode;
+        this.sampleEvery = sampleEvery;
+        this.balances = balances;
+        this.logger = logger;
+        if (mode == Mode.COALESCED) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "login-audit-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleAtFixedRate(this::flushQuietly, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    public static LoginAudit all(DataStore store, Logger logger) {
+        return new LoginAudit(store, Mode.ALL, 1, 0, null, logger);
+    }
+
+    public static LoginAudit sampled(DataStore store, long every, Logger logger) {
+        return new LoginAudit(store, Mode.SAMPLED, Math.max(1, every), 0, null, logger);
+    }
+
+    // balances gives an account's current balance (e.g. bank::balance) for the flushed records.
+    public static LoginAudit coalesced(DataStore store, long windowMillis, Function<String, BigDecimal> balances,
+                                       Logger logger) {
+        return new LoginAudit(store, Mode.COALESCED, 1, Math.max(1, windowMillis), balances, logger);
+    }
+
+    public Mode getMode() { return mode; }
+
+    public void record(String accountNumber, BigDecimal balance) throws IOException {
+        switch (mode) {
+            case ALL -> store.appendTransaction(login(LocalDateTime.now(), accountNumber, balance, "Successful login"));
+            case SAMPLED -> {
+                if (seen.getAndIncrement() % sampleEvery == 0) {
+                    store.appendTransaction(login(LocalDateTime.now(), accountNumber, balance,
+                            "Successful login (sampled 1/" + sampleEvery + ")"));
+                }
+            }
+            case COALESCED -> pending.merge(accountNumber, 1, Integer::sum);
+        }
+    }
+
+    // Writes all buffered logins in one append.
+    public void flush() throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        List<Transaction> batch = new ArrayList<>();
+        for (String accountNumber : pending.keySet()) {
+            Integer count = pending.remove(accountNumber);
+            if (count == null) continue;
+            batch.add(login(now, accountNumber, balances.apply(accountNumber),
+                    count == 1 ? "Successful login" : "Successful login x" + count));
+        }
+        if (batch.isEmpty()) return;
+        store.appendTransactions(batch);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) flusher.shutdownNow();
+        flush();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Login audit flush failed: " + e);
+        }
+    }
+
+    private static Transaction login(LocalDateTime ts, String accountNumber, BigDecimal balance, String details) {
+        return new Transaction(ts, accountNumber, TransactionType.LOGIN, BigDecimal.ZERO, balance, details, "");
+    }
+}
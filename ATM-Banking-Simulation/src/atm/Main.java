@@ -10,7 +10,7 @@ import java.util.logging.*;
 public class Main {
     public static void main(String[] args) {
         try {
-            java.nio.file.Path dataDir = java.nio.file.Path.of("data");
+            java.nio.file.Path dataDir = java.nio.file.Path.of(System.getProperty("atm.data", "data"));
             java.nio.file.Path logsDir = java.nio.file.Path.of("logs");
             if (!logsDir.toFile().exists()) logsDir.toFile().mkdirs();
 
@@ -22,10 +22,65 @@ public class Main {
             logger.addHandler(file);
             logger.setLevel(Level.INFO);
 
-            FileDataStore store = new FileDataStore(dataDir);
-            Bank bank = new Bank(store, logger);
-            ATM atm = new ATM(bank);
-            new ConsoleUI(atm, logger).startInteractive();
+            FileDataStore fileStore = new FileDataStore(dataDir);
+            // -Datm.accounts=compact selects the primitive-keyed table for very large deployments
+            AccountTable table = "compact".equalsIgnoreCase(System.getProperty("atm.accounts"))
+                    ? new CompactAccountTable() : new HashAccountTable();
+            // history search index; -Datm.index.maxRows caps the rows kept in memory, the rest spill to disk
+            DataStore indexed = new IndexedDataStore(fileStore, dataDir.resolve("index"),
+                    Long.parseLong(System.getProperty("atm.index.maxRows", "2000000")), logger);
+
+            // Replication: -Datm.replication.listen=<port> runs a primary (add -Datm.replication.ack=one
+            // to wait for a follower), -Datm.replication.follow=<port> a read-only follower.
+            String listen = System.getProperty("atm.replication.listen");
+            String follow = System.getProperty("atm.replication.follow");
+            java.io.Closeable replication = null;
+            LoginAudit loginAudit = null;
+            HotAccountDetector hotDetector = null;
+            StandingOrderEngine standingOrders = null;
+            ATM atm;
+            if (follow != null) {
+                Bank bank = new Bank(indexed, logger, table);
+                ReplicationFollower follower = new ReplicationFollower(bank, indexed, Integer.parseInt(follow),
+                        dataDir.resolve("replication.pos"), logger).start();
+                replication = follower;
+                logReplicationStats(logger, follower::stats);
+                atm = new ReadOnlyATM(bank);
+            } else {
+                DataStore store = indexed;
+                if (listen != null) {
+                    ReplicationPrimary.AckMode mode = "one".equalsIgnoreCase(System.getProperty("atm.replication.ack"))
+                            ? ReplicationPrimary.AckMode.ONE_FOLLOWER : ReplicationPrimary.AckMode.ASYNC;
+                    ReplicationPrimary primary = new ReplicationPrimary(Integer.parseInt(listen), mode, 1000, 100_000,
+                            fileStore, logger);
+                    replication = primary;
+                    logReplicationStats(logger, primary::stats);
+                    store = new ReplicatingDataStore(indexed, primary);
+                }
+                Bank bank = new Bank(store, logger, table);
+                bank.recoverFromLog();
+                // -Datm.hot.threshold=<n>: mark accounts hot after n contended credits within a second
+                String hotThreshold = System.getProperty("atm.hot.threshold");
+                if (hotThreshold != null) {
+                    hotDetector = new HotAccountDetector(bank, 1000, Long.parseLong(hotThreshold), logger);
+                    bank.setHotAccountDetector(hotDetector);
+                }
+                loginAudit = loginAudit(System.getProperty("atm.loginAudit", "all"), store, bank, logger);
+                bank.setLoginAudit(loginAudit);
+                // standing orders run on the primary only; due orders are checked every second
+                standingOrders = new StandingOrderEngine(bank, store, logger).start(1000);
+                int slots = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+                atm = new AdmissionControlledATM(bank, new AdmissionController(slots));
+            }
+            // idle sessions expire after -Datm.session.idleSeconds (default 300)
+            long idleMillis = 1000L * Long.parseLong(System.getProperty("atm.session.idleSeconds", "300"));
+            try (SessionManager sessions = new SessionManager(idleMillis, 1000, 512, 3, logger)) {
+                new ConsoleUI(atm, sessions, standingOrders, logger).startInteractive();
+            }
+            if (standingOrders != null) standingOrders.close();
+            if (hotDetector != null) hotDetector.close();
+            if (loginAudit != null) loginAudit.close();
+            if (replication != null) replication.close();
 
             // Safe exit: nothing to flush beyond what FileDataStore already persists per op.
             logger.info("ATM shut down cleanly.");
@@ -34,4 +89,23 @@ public class Main {
             System.err.println("Fatal I/O: " + e.getMessage());
         }
     }
+
+    // -Datm.loginAudit=all | sample:<N> (one record per N logins) | coalesce:<millis> (one per account per window)
+    private static LoginAudit loginAudit(String spec, DataStore store, Bank bank, Logger logger) {
+        String[] p = spec.split(":", 2);
+        return switch (p[0].toLowerCase()) {
+            case "sample" -> LoginAudit.sampled(store, Long.parseLong(p[1]), logger);
+            case "coalesce" -> LoginAudit.coalesced(store, Long.parseLong(p[1]), bank::balance, logger);
+            default -> LoginAudit.all(store, logger);
+        };
+    }
+
+    private static void logReplicationStats(Logger logger, java.util.function.Supplier<String> stats) {
+        java.util.concurrent.ScheduledExecutorService timer = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "repl-stats");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(() -> logger.info("Replication: " + stats.get()), 30, 30, java.util.concurrent.TimeUnit.SECONDS);
+    }
 }
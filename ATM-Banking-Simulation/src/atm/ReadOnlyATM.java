@@ -0,0 +1,72 @@
+/*
+ * ReadOnlyATM.java - ATM for a replication follower: logins, balances and history only.
+ */
+package atm;
+
+import atm.exceptions.AuthenticationException;
+import atm.exceptions.ValidationException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+public class ReadOnlyATM extends ATM {
+    private final Bank bank;
+
+    public ReadOnlyATM(Bank bank) {
+        super(bank);
+        this.bank = bank;
+    }
+
+    // No LOGIN record: the follower's transaction log only holds what the primary shipped.
+    @Override
+    public User login(String accountNumber, String pin, Bank.LoginGate gate) throws AuthenticationException, IOException {
+        User user = new User(bank.verifyCredentials(accountNumber, pin));
+        if (gate != null) gate.admit(user);
+        return user;
+    }
+
+    @Override
+    public void deposit(User user, BigDecimal amount) throws ValidationException {
+        throw readOnly();
+    }
+
+    @Override
+    public void withdraw(User user, BigDecimal amount) throws ValidationException {
+        throw readOnly();
+    }
+
+    @Override
+    public void transfer(User user, String toAccount, BigDecimal amount) throws ValidationException {
+        throw readOnly();
+    }
+
+    @Override
+    public Account adminCreate(String name, Account.Role role, BigDecimal initialBalance, String pin)
+            throws ValidationException {
+        throw readOnly();
+    }
+
+    @Override
+    public void adminDelete(String accountNumber) throws ValidationException {
+        throw readOnly();
+    }
+
+    @Override
+    public void adminSetHot(String accountNumber, boolean hot) throws ValidationException, IOException {
+        throw readOnly();
+    }
+
+    @Override
+    public BatchPostingJob.Result adminPostInterest(BigDecimal ratePercent, String runId) throws ValidationException {
+        throw readOnly();
+    }
+
+    @Override
+    public BatchPostingJob.Result adminPostFee(BigDecimal fee, String runId) throws ValidationException {
+        throw readOnly();
+    }
+
+    private static ValidationException readOnly() {
+        return new ValidationException("This ATM is a read-only replica; use the primary.");
+    }
+}
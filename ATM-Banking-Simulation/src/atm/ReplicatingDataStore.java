@@ -0,0 +1,103 @@
+/*
+ * ReplicatingDataStore.java - DataStore decorator that ships every write to a ReplicationPrimary.
+ *
+ * Writes go to the local store first; then the changed account rows / transaction records are
+ * published to the replication log and, in ONE_FOLLOWER mode, acknowledged by a follower before
+ * the call returns. Account saves are the exception: their ack is awaited in awaitReplication,
+ * which Bank calls after leaving its persist lock. It waits for the latest save, since Bank may
+ * have skipped the caller's own save because another one already covered its change.
+ * Transaction appends and their publication happen under the primary's history lock, so a
+ * snapshot of the log file always matches a replication sequence number.
+ */
+package atm;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class ReplicatingDataStore implements DataStore {
+    private final DataStore delegate;
+    private final ReplicationPrimary primary;
+    // sequence of the latest account save; a caller whose change went into it waits for this one
+    private volatile long lastAccountsSeq;
+
+    public ReplicatingDataStore(DataStore delegate, ReplicationPrimary primary) {
+        this.delegate = delegate;
+        this.primary = primary;
+    }
+
+    @Override
+    public List<Account> loadAccounts() throws IOException {
+        return delegate.loadAccounts();
+    }
+
+    @Override
+    public void saveAccounts(List<Account> accounts) throws IOException {
+        delegate.saveAccounts(accounts);
+        lastAccountsSeq = primary.publishAccounts(accounts);
+    }
+
+    @Override
+    public void awaitReplication() {
+        long seq = lastAccountsSeq;
+        if (seq > 0) primary.awaitAck(seq);
+    }
+
+    @Override
+    public void appendTransaction(Transaction tx) throws IOException {
+        long seq;
+        synchronized (primary.historyLock) {
+            delegate.appendTransaction(tx);
+            seq = primary.publishTransactions(List.of(tx));
+        }
+        primary.awaitAck(seq);
+    }
+
+    @Override
+    public void appendTransactions(List<Transaction> txs) throws IOException {
+        long seq;
+        synchronized (primary.historyLock) {
+            delegate.appendTransactions(txs);
+            seq = primary.publishTransactions(txs);
+        }
+        primary.awaitAck(seq);
+    }
+
+    @Override
+    public List<Transaction> loadLastNTransactions(String accountNumber, int n) throws IOException {
+        return delegate.loadLastNTransactions(accountNumber, n);
+    }
+
+    @Override
+    public void forEachTransaction(Consumer<Transaction> action) throws IOException {
+        delegate.forEachTransaction(action);
+    }
+
+    @Override
+    public TransactionPage searchTransactions(String accountNumber, TransactionQuery query) throws IOException {
+        return delegate.searchTransactions(accountNumber, query);
+    }
+
+    // The order book is not shipped: only the primary runs standing orders, and the transfers
+    // they make replicate like any other.
+    @Override
+    public List<StandingOrder> loadStandingOrders() throws IOException {
+        return delegate.loadStandingOrders();
+    }
+
+    @Override
+    public void saveStandingOrders(List<StandingOrder> changed) throws IOException {
+        delegate.saveStandingOrders(changed);
+    }
+
+    @Override
+    public Set<String> loadCheckpoint(String jobId) throws IOException {
+        return delegate.loadCheckpoint(jobId);
+    }
+
+    @Override
+    public void appendCheckpoint(String jobId, String entry) throws IOException {
+        delegate.appendCheckpoint(jobId, entry);
+    }
+}
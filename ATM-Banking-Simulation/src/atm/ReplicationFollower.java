@@ -0,0 +1,163 @@
+/*
+ * ReplicationFollower.java - Applies a primary's replication stream to a local read-only Bank.
+ *
+ * Records are applied to the in-memory Bank as they arrive and are made durable in batches:
+ * once the socket has no more buffered input, pending transactions are appended to the local
+ * store, account state is saved, the position (primary epoch + sequence) is written and only
+ * then acknowledged. After a disconnect or restart the follower reconnects and resumes from that
+ * position. It also reports how many transaction rows it holds, so that a snapshot ships only the
+ * history it is missing and its transactions.csv ends up the same as the primary's. A crash
+ * between appending a batch and writing the position can replay that batch's transaction
+ * records once.
+ */
+package atm;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class ReplicationFollower implements Closeable {
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private final Bank bank;
+    private final DataStore store;
+    private final int port;
+    private final Path positionFile;
+    private final Logger logger;
+
+    private volatile long epoch;
+    private volatile long appliedSeq;
+    private volatile long primaryHeadSeq;
+    private volatile long lagMillis;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private volatile Socket socket;
+
+    public ReplicationFollower(Bank bank, DataStore store, int port, Path positionFile, Logger logger) throws IOException {
+        this.bank = bank;
+        this.store = store;
+        this.port = port;
+        this.positionFile = positionFile;
+        this.logger = logger;
+        if (Files.exists(positionFile)) {
+            String[] pos = Files.readString(positionFile, StandardCharsets.UTF_8).trim().split(" ");
+            this.epoch = Long.parseLong(pos[0]);
+            this.appliedSeq = Long.parseLong(pos[1]);
+        }
+    }
+
+    public ReplicationFollower start() {
+        Thread t = new Thread(this::runLoop, "repl-follower");
+        t.setDaemon(true);
+        t.start();
+        return this;
+    }
+
+    public long getAppliedSeq() { return appliedSeq; }
+    public long getPrimaryHeadSeq() { return primaryHeadSeq; }
+    public boolean isConnected() { return connected; }
+
+    public String stats() {
+        return "follower connected=" + connected + " epoch=" + epoch + " applied=" + appliedSeq
+                + " primaryHead=" + primaryHeadSeq + " lagRecords=" + Math.max(0, primaryHeadSeq - appliedSeq)
+                + " lagMillis=" + lagMillis;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Socket s = socket;
+        if (s != null) s.close();
+    }
+
+    private void runLoop() {
+        while (!closed) {
+            try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                socket = s;
+                connected = true;
+                logger.info("Replication follower connected to port " + port + " from seq " + appliedSeq);
+                session(s);
+            } catch (IOException | RuntimeException e) {
+                if (!closed) logger.warning("Replication follower disconnected: " + e);
+            } finally {
+                connected = false;
+            }
+            if (closed) break;
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void session(Socket s) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+        Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+        long[] historyRows = {0};
+        store.forEachTransaction(tx -> historyRows[0]++);
+        out.write("HELLO " + epoch + " " + appliedSeq + " " + historyRows[0] + "\n");
+        out.flush();
+
+        List<Transaction> pendingTx = new ArrayList<>();
+        boolean accountsDirty = false;
+        long batchEpoch = epoch;
+        long batchSeq = appliedSeq;
+        long batchMillis = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            switch (line.charAt(0)) {
+                case 'A', 'T' -> {
+                    String[] p = line.split(" ", 4);
+                    batchSeq = Long.parseLong(p[1]);
+                    batchMillis = Long.parseLong(p[2]);
+                    if (line.charAt(0) == 'A') {
+                        bank.applyReplicated(FileDataStore.parseAccount(p[3]));
+                        accountsDirty = true;
+                    } else {
+                        pendingTx.add(FileDataStore.parseTransaction(p[3]));
+                    }
+                }
+                case 'S' -> {
+                    bank.applyReplicated(FileDataStore.parseAccount(line.substring(2)));
+                    accountsDirty = true;
+                }
+                case 'X' -> pendingTx.add(FileDataStore.parseTransaction(line.substring(2)));
+                case 'E' -> {
+                    String[] p = line.split(" ");
+                    batchEpoch = Long.parseLong(p[1]);
+                    batchSeq = Long.parseLong(p[2]);
+                    batchMillis = 0;
+                }
+                case 'H' -> {
+                    String[] p = line.split(" ");
+                    primaryHeadSeq = Long.parseLong(p[1]);
+                    if (appliedSeq >= primaryHeadSeq) lagMillis = 0;
+                }
+                default -> logger.warning("Replication follower ignored: " + line);
+            }
+            primaryHeadSeq = Math.max(primaryHeadSeq, batchSeq);
+
+            if (!in.ready() && (batchSeq != appliedSeq || batchEpoch != epoch)) {
+                if (!pendingTx.isEmpty()) store.appendTransactions(pendingTx);
+                if (accountsDirty) store.saveAccounts(bank.snapshotAccounts());
+                Files.writeString(positionFile, batchEpoch + " " + batchSeq + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                pendingTx = new ArrayList<>();
+                accountsDirty = false;
+                epoch = batchEpoch;
+                appliedSeq = batchSeq;
+                if (batchMillis > 0) lagMillis = System.currentTimeMillis() - batchMillis;
+                out.write("ACK " + appliedSeq + "\n");
+                out.flush();
+            }
+        }
+    }
+}
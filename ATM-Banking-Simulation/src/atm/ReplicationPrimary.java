@@ -0,0 +1,310 @@
+/*
+ * ReplicationPrimary.java - Replication log and local socket server that ships it to followers.
+ *
+ * Every account row change and every transaction written on the primary becomes a numbered
+ * record in an in-memory log that keeps the most recent records. Followers connect over TCP on
+ * the loopback interface and say where they stopped ("HELLO <epoch> <seq> <txRows>"). A follower
+ * that is still inside the retained log gets the missing records. Any other follower (new, too
+ * far behind, or from a previous primary run with another epoch) first gets a snapshot: all
+ * account rows, then the transactions.csv rows past the txRows it already holds, then the live
+ * stream. The snapshot reads the local log under historyLock, which every append-and-publish
+ * also holds, so the rows shipped are exactly those up to the snapshot's sequence number.
+ * Followers acknowledge what they have durably applied with "ACK <seq>".
+ *
+ * Wire format, one UTF-8 line per message, primary to follower:
+ *   A <seq> <millis> <accounts.csv row>       account state change
+ *   T <seq> <millis> <transactions.csv row>   transaction record
+ *   S <accounts.csv row>                      snapshot row
+ *   X <transactions.csv row>                  snapshot history row
+ *   E <epoch> <seq>                           end of snapshot; stream continues after seq
+ *   H <headSeq> <millis>                      heartbeat while idle
+ */
+package atm;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+public class ReplicationPrimary implements Closeable {
+    public enum AckMode { ASYNC, ONE_FOLLOWER }
+
+    static final class Record {
+        final long seq;
+        final long millis;
+        final char kind;        // 'A' or 'T'
+        final String payload;
+
+        Record(long seq, long millis, char kind, String payload) {
+            this.seq = seq;
+            this.millis = millis;
+            this.kind = kind;
+            this.payload = payload;
+        }
+
+        String toLine() { return kind + " " + seq + " " + millis + " " + payload; }
+    }
+
+    private static final long HEARTBEAT_MILLIS = 1000;
+
+    private final long epoch = new Random().nextLong() & Long.MAX_VALUE;
+    private final int retained;
+    private final AckMode ackMode;
+    private final long ackTimeoutMillis;
+    private final DataStore local;
+    private final Logger logger;
+    // held by ReplicatingDataStore around each append and its publication, and by snapshots
+    final Object historyLock = new Object();
+
+    // guarded by this
+    private final ArrayDeque<Record> log = new ArrayDeque<>();
+    private final Map<String, String> accountRows = new LinkedHashMap<>();
+    private long headSeq;
+    private long ackTimeouts;
+
+    private final ServerSocket server;
+    private final List<FollowerLink> followers = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    public ReplicationPrimary(int port, AckMode ackMode, long ackTimeoutMillis, int retainedRecords,
+                              DataStore local, Logger logger) throws IOException {
+        this.ackMode = ackMode;
+        this.ackTimeoutMillis = ackTimeoutMillis;
+        this.retained = Math.max(1, retainedRecords);
+        this.local = local;
+        this.logger = logger;
+        for (Account a : local.loadAccounts()) accountRows.put(a.getAccountNumber(), FileDataStore.formatAccount(a));
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "repl-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Replication primary listening on port " + getPort() + " (epoch " + epoch + ", " + ackMode + ")");
+    }
+
+    public int getPort() { return server.getLocalPort(); }
+
+    // --- publishing (called by ReplicatingDataStore) ---
+
+    // Publishes rows that differ from what was last shipped. Returns the new head sequence.
+    synchronized long publishAccounts(List<Account> accounts) {
+        long now = System.currentTimeMillis();
+        for (Account a : accounts) {
+            String row = FileDataStore.formatAccount(a);
+            if (!row.equals(accountRows.put(a.getAccountNumber(), row))) append(new Record(++headSeq, now, 'A', row));
+        }
+        notifyAll();
+        return headSeq;
+    }
+
+    synchronized long publishTransactions(List<Transaction> txs) {
+        long now = System.currentTimeMillis();
+        for (Transaction tx : txs) append(new Record(++headSeq, now, 'T', tx.toCsvLine()));
+        notifyAll();
+        return headSeq;
+    }
+
+    // In ONE_FOLLOWER mode, waits until some follower has acknowledged seq. Falls back to async
+    // (and counts a timeout) when nobody is connected or the ack does not arrive in time.
+    void awaitAck(long seq) {
+        if (ackMode != AckMode.ONE_FOLLOWER || followers.isEmpty()) return;
+        long deadline = System.currentTimeMillis() + ackTimeoutMillis;
+        synchronized (this) {
+            while (maxAcked() < seq) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0 || followers.isEmpty()) {
+                    ackTimeouts++;
+                    logger.warning("Replication ack timeout at seq " + seq);
+                    return;
+                }
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // --- metrics ---
+
+    public synchronized String stats() {
+        StringBuilder sb = new StringBuilder("primary epoch=" + epoch + " head=" + headSeq + " retained=" + log.size()
+                + " ackTimeouts=" + ackTimeouts + " followers=" + followers.size());
+        long now = System.currentTimeMillis();
+        for (FollowerLink f : followers) {
+            sb.append("\n  ").append(f.name).append(" acked=").append(f.ackedSeq)
+              .append(" lagRecords=").append(headSeq - f.ackedSeq)
+              .append(" lagMillis=").append(f.ackedSeq >= headSeq ? 0 : now - oldestUnackedMillis(f.ackedSeq));
+        }
+        return sb.toString();
+    }
+
+    public synchronized long getHeadSeq() { return headSeq; }
+
+    public synchronized long getAckTimeouts() { return ackTimeouts; }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (FollowerLink f : followers) f.close();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    // --- internals ---
+
+    private void append(Record r) {
+        log.addLast(r);
+        if (log.size() > retained) log.removeFirst();
+    }
+
+    private long maxAcked() {
+        long max = 0;
+        for (FollowerLink f : followers) max = Math.max(max, f.ackedSeq);
+        return max;
+    }
+
+    // Account rows plus the history rows the follower lacks (historyRows[0] on entry; updated to
+    // the rows it will hold), all as of the returned sequence. Appends wait while the log is read.
+    private long snapshot(List<String> lines, long[] historyRows) throws IOException {
+        synchronized (historyLock) {
+            long head;
+            synchronized (this) {
+                for (String row : accountRows.values()) lines.add("S " + row);
+                head = headSeq;
+            }
+            long skip = historyRows[0];
+            long[] seen = {0};
+            local.forEachTransaction(tx -> {
+                if (seen[0]++ >= skip) lines.add("X " + tx.toCsvLine());
+            });
+            if (seen[0] < skip) {
+                logger.warning("Replication follower holds " + skip + " history rows, primary only " + seen[0]);
+            }
+            historyRows[0] = Math.max(skip, seen[0]);
+            lines.add("E " + epoch + " " + head);
+            return head;
+        }
+    }
+
+    private long oldestUnackedMillis(long acked) {
+        for (Record r : log) if (r.seq > acked) return r.millis;
+        return System.currentTimeMillis();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                FollowerLink link = new FollowerLink(socket);
+                Thread t = new Thread(link::run, "repl-send-" + socket.getPort());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (!closed) logger.warning("Replication accept failed: " + e);
+            }
+        }
+    }
+
+    private final class FollowerLink {
+        private final Socket socket;
+        private final String name;
+        private volatile long ackedSeq;
+
+        FollowerLink(Socket socket) {
+            this.socket = socket;
+            this.name = "follower:" + socket.getPort();
+        }
+
+        void run() {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+                String[] hello = in.readLine().split(" ");
+                long followerEpoch = Long.parseLong(hello[1]);
+                long sent = Long.parseLong(hello[2]);
+                long[] historyRows = {hello.length > 3 ? Long.parseLong(hello[3]) : 0};
+                ackedSeq = followerEpoch == epoch ? sent : 0;
+                followers.add(this);
+                startAckReader(in);
+                logger.info("Replication " + name + " connected from seq " + sent);
+
+                while (!closed) {
+                    List<String> lines = new ArrayList<>();
+                    boolean needSnapshot = false;
+                    synchronized (ReplicationPrimary.this) {
+                        if (followerEpoch == epoch && sent >= headSeq) {
+                            ReplicationPrimary.this.wait(HEARTBEAT_MILLIS);
+                            if (sent >= headSeq) lines.add("H " + headSeq + " " + System.currentTimeMillis());
+                        }
+                        if (lines.isEmpty()) {
+                            boolean resumable = followerEpoch == epoch && sent <= headSeq
+                                    && !log.isEmpty() && sent >= log.peekFirst().seq - 1;
+                            if (resumable) {
+                                for (Record r : log) {
+                                    if (r.seq <= sent) continue;
+                                    lines.add(r.toLine());
+                                    if (r.kind == 'T') historyRows[0]++;
+                                }
+                                sent = headSeq;
+                            } else {
+                                needSnapshot = true;
+                            }
+                        }
+                    }
+                    if (needSnapshot) {
+                        // cannot resume from the log: snapshot, then stream from its sequence
+                        sent = snapshot(lines, historyRows);
+                        followerEpoch = epoch;
+                    }
+                    for (String line : lines) {
+                        out.write(line);
+                        out.write('\n');
+                    }
+                    out.flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!closed) logger.warning("Replication " + name + " disconnected: " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                followers.remove(this);
+                close();
+            }
+        }
+
+        private void startAckReader(BufferedReader in) {
+            Thread t = new Thread(() -> {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (line.startsWith("ACK ")) {
+                            ackedSeq = Long.parseLong(line.substring(4).trim());
+                            synchronized (ReplicationPrimary.this) {
+                                ReplicationPrimary.this.notifyAll();
+                            }
+                        }
+                    }
+                } catch (IOException | RuntimeException ignored) {
+                } finally {
+                    close();
+                }
+            }, "repl-ack-" + socket.getPort());
+            t.setDaemon(true);
+            t.start();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * SessionManager.java - Opaque session tokens with idle expiry on a timing wheel.
+ *
+ * open() issues a random token for an authenticated User; resolve() returns the User and counts
+ * as activity. Activity only stamps the session's last-access time. Each session has a single
+ * entry in a TimingWheel; when that entry comes due, the session either expires or, if it was
+ * used in the meantime, is rescheduled for its new idle deadline. Touching a session is O(1),
+ * and the ticker only looks at sessions that are actually due, not at every live session.
+ */
+package atm;
+
+import atm.exceptions.AuthenticationException;
+
+import java.io.Closeable;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+public class SessionManager implements Closeable {
+    private static final SecureRandom RAND = new SecureRandom();
+
+    private static final class Session {
+        final String token;
+        final User user;
+        final String accountNumber;
+        volatile long lastAccessMillis;
+        final AtomicBoolean ended = new AtomicBoolean();
+
+        Session(String token, User user, long now) {
+            this.token = token;
+            this.user = user;
+            this.accountNumber = user.getAccount().getAccountNumber();
+            this.lastAccessMillis = now;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    // open sessions per account; an account's entry goes away with its last session
+    private final ConcurrentHashMap<String, Integer> perAccount = new ConcurrentHashMap<>();
+    private final TimingWheel<Session> wheel;
+    private final long idleTimeoutMillis;
+    private final int maxSessionsPerAccount;
+    private final ScheduledExecutorService ticker;
+    private final Logger logger;
+
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    // maxSessionsPerAccount <= 0 means unlimited
+    public SessionManager(long idleTimeoutMillis, long tickMillis, int wheelSize, int maxSessionsPerAccount, Logger logger) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxSessionsPerAccount = maxSessionsPerAccount;
+        this.logger = logger;
+        this.wheel = new TimingWheel<>(tickMillis, wheelSize, System.currentTimeMillis());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-ticker");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public String open(User user) throws AuthenticationException {
+        String accountNumber = user.getAccount().getAccountNumber();
+        AtomicBoolean full = new AtomicBoolean();
+        perAccount.compute(accountNumber, (k, n) -> {
+            int count = n == null ? 0 : n;
+            if (maxSessionsPerAccount > 0 && count >= maxSessionsPerAccount) {
+                full.set(true);
+                return n;
+            }
+            return count + 1;
+        });
+        if (full.get()) throw new AuthenticationException("Too many active sessions for this account.");
+        long now = System.currentTimeMillis();
+        Session s = new Session(newToken(), user, now);
+        sessions.put(s.token, s);
+        wheel.schedule(s, now + idleTimeoutMillis);
+        opened.increment();
+        return s.token;
+    }
+
+    // Returns the session's user and refreshes its idle timer.
+    public User resolve(String token) throws AuthenticationException {
+        Session s = token == null ? null : sessions.get(token);
+        long now = System.currentTimeMillis();
+        if (s == null || now - s.lastAccessMillis >= idleTimeoutMillis) {
+            if (s != null) end(s, true);
+            throw new AuthenticationException("Session expired, please log in again.");
+        }
+        s.lastAccessMillis = now;
+        return s.user;
+    }
+
+    public void close(String token) {
+        Session s = token == null ? null : sessions.get(token);
+        if (s != null) end(s, false);
+    }
+
+    public int activeSessions() { return sessions.size(); }
+
+    public int activeSessions(String accountNumber) {
+        Integer n = perAccount.get(accountNumber);
+        return n == null ? 0 : n;
+    }
+
+    public long openedCount() { return opened.sum(); }
+    public long expiredCount() { return expired.sum(); }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    // --- internals ---
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            wheel.advance(now, s -> {
+                if (s.ended.get()) return;   // logged out; drop the stale wheel entry
+                long deadline = s.lastAccessMillis + idleTimeoutMillis;
+                if (deadline > now) wheel.schedule(s, deadline);
+                else end(s, true);
+            });
+        } catch (RuntimeException e) {
+            logger.severe("Session ticker failed: " + e);
+        }
+    }
+
+    private void end(Session s, boolean byTimeout) {
+        if (!s.ended.compareAndSet(false, true)) return;
+        sessions.remove(s.token, s);
+        perAccount.computeIfPresent(s.accountNumber, (k, n) -> n > 1 ? n - 1 : null);
+        if (byTimeout) {
+            expired.increment();
+            logger.fine("Session expired for " + s.accountNumber);
+        }
+    }
+
+    private static String newToken() {
+        byte[] b = new byte[24];
+        RAND.nextBytes(b);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * StandingOrder.java - Immutable state of a recurring or one-off scheduled transfer.
+ *
+ * Occurrence k of an order is due at start plus k periods, so a monthly order that starts on
+ * the 31st runs on the last day of shorter months and on the 31st again after them. runs counts
+ * finished occurrences (paid or given up). attempt counts failed tries of the current one.
+ */
+package atm;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+public class StandingOrder {
+    public enum Frequency { ONCE, DAILY, WEEKLY, MONTHLY }
+
+    public enum Status { ACTIVE, COMPLETED, CANCELLED, FAILED }
+
+    private final long id;
+    private final String fromAccount;
+    private final String toAccount;
+    private final BigDecimal amount;
+    private final Frequency frequency;
+    private final LocalDateTime start;
+    private final int runs;
+    private final int attempt;
+    private final LocalDateTime nextRun;
+    private final Status status;
+
+    public StandingOrder(long id, String fromAccount, String toAccount, BigDecimal amount, Frequency frequency,
+                         LocalDateTime start, int runs, int attempt, LocalDateTime nextRun, Status status) {
+        this.id = id;
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amount = Account.normalize(amount);
+        this.frequency = frequency;
+        this.start = start;
+        this.runs = runs;
+        this.attempt = attempt;
+        this.nextRun = nextRun;
+        this.status = status;
+    }
+
+    public long getId() { return id; }
+    public String getFromAccount() { return fromAccount; }
+    public String getToAccount() { return toAccount; }
+    public BigDecimal getAmount() { return amount; }
+    public Frequency getFrequency() { return frequency; }
+    public LocalDateTime getStart() { return start; }
+    public int getRuns() { return runs; }
+    public int getAttempt() { return attempt; }
+    public LocalDateTime getNextRun() { return nextRun; }
+    public Status getStatus() { return status; }
+    public boolean isActive() { return status == Status.ACTIVE; }
+
+    // Text on the transfer records of the current occurrence; also how a restart recognizes it.
+    String occurrenceTag() {
+        return "Standing order " + id + " #" + (runs + 1);
+    }
+
+    // --- state transitions ---
+
+    // The current occurrence was paid or given up; moves on to the next one.
+    StandingOrder advanced() {
+        LocalDateTime next = occurrence(runs + 1);
+        return new StandingOrder(id, fromAccount, toAccount, amount, frequency, start, runs + 1, 0,
+                next == null ? nextRun : next, next == null ? Status.COMPLETED : Status.ACTIVE);
+    }
+
+    // Insufficient funds: tries again after backoff * 2^attempt, unless that would reach the next
+    // occurrence or the retries are used up, in which case this occurrence is skipped.
+    StandingOrder retried(LocalDateTime now, int maxRetries, Duration backoff) {
+        if (attempt >= maxRetries) return frequency == Frequency.ONCE ? withStatus(Status.FAILED) : advanced();
+        LocalDateTime retryAt = now.plus(backoff.multipliedBy(1L << Math.min(attempt, 20)));
+        LocalDateTime next = occurrence(runs + 1);
+        if (next != null && !retryAt.isBefore(next)) return advanced();
+        return new StandingOrder(id, fromAccount, toAccount, amount, frequency, start, runs, attempt + 1, retryAt, status);
+    }
+
+    StandingOrder withStatus(Status newStatus) {
+        return new StandingOrder(id, fromAccount, toAccount, amount, frequency, start, runs, attempt, nextRun, newStatus);
+    }
+
+    private LocalDateTime occurrence(int k) {
+        return switch (frequency) {
+            case ONCE -> k == 0 ? start : null;
+            case DAILY -> start.plusDays(k);
+            case WEEKLY -> start.plusWeeks(k);
+            case MONTHLY -> start.plusMonths(k);
+        };
+    }
+
+    @Override
+    public String toString() {
+        String when = status == Status.ACTIVE ? " next " + nextRun + (attempt > 0 ? " (retry " + attempt + ")" : "") : "";
+        return String.format("#%d %s -> %s %s %s%s [%s]", id, fromAccount, toAccount, amount.toPlainString(),
+                frequency, when, status);
+    }
+}
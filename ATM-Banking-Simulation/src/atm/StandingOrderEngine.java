@@ -0,0 +1,255 @@
+/*
+ * StandingOrderEngine.java - Runs standing orders from a persisted order book.
+ *
+ * Active orders sit in a priority queue keyed by next run time. Each tick collects everything
+ * due and executes it in batches of batchSize through Bank.transferBatch: one lock-ordered
+ * pass, one log append and one account save per batch instead of per transfer. The new state
+ * of the batch's orders is then appended to the order book in one write. An order that fails
+ * for lack of funds is retried with exponential backoff (see StandingOrder.retried).
+ *
+ * If the process dies after a batch was paid but before the book was updated, the restart
+ * finds the occurrence's transfer in the source account's history (through the store's search,
+ * which the history index answers) and moves the order on, so the batch is not paid twice.
+ * The records go to the log before the balances are saved, so a batch that reached the log also
+ * reaches the balances once Bank.recoverFromLog has run.
+ * Orders of a batch that failed, and of the batches after it, go back into the queue.
+ */
+package atm;
+
+import atm.exceptions.InsufficientFundsException;
+import atm.exceptions.ValidationException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public class StandingOrderEngine implements Closeable {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    public static final Duration DEFAULT_BACKOFF = Duration.ofMinutes(5);
+    public static final int MAX_ORDERS_PER_ACCOUNT = 100;
+
+    public static final class RunResult {
+        private final int batches;
+        private final int paid;
+        private final int retried;
+        private final int failed;
+
+        RunResult(int batches, int paid, int retried, int failed) {
+            this.batches = batches;
+            this.paid = paid;
+            this.retried = retried;
+            this.failed = failed;
+        }
+
+        public int getBatches() { return batches; }
+        public int getPaid() { return paid; }
+        public int getRetried() { return retried; }
+        public int getFailed() { return failed; }
+
+        @Override
+        public String toString() {
+            return String.format("batches=%d paid=%d retried=%d failed=%d", batches, paid, retried, failed);
+        }
+    }
+
+    private static final Comparator<StandingOrder> BY_NEXT_RUN =
+            Comparator.comparing(StandingOrder::getNextRun).thenComparingLong(StandingOrder::getId);
+
+    private final Bank bank;
+    private final DataStore store;
+    private final Logger logger;
+    private final int batchSize;
+    private final int maxRetries;
+    private final Duration backoff;
+
+    // guarded by this; the queue may hold superseded versions, which are skipped when polled
+    private final Map<Long, StandingOrder> book = new HashMap<>();
+    private final PriorityQueue<StandingOrder> queue = new PriorityQueue<>(BY_NEXT_RUN);
+    private long nextId = 1;
+    // held while a state change is both applied and written, so the book file sees them in order
+    private final Object persistLock = new Object();
+    private final Object runLock = new Object();
+    private ScheduledExecutorService ticker;
+
+    public StandingOrderEngine(Bank bank, DataStore store, Logger logger) throws IOException {
+        this(bank, store, logger, DEFAULT_BATCH_SIZE, DEFAULT_MAX_RETRIES, DEFAULT_BACKOFF);
+    }
+
+    public StandingOrderEngine(Bank bank, DataStore store, Logger logger, int batchSize, int maxRetries,
+                               Duration backoff) throws IOException {
+        this.bank = bank;
+        this.store = store;
+        this.logger = logger;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.backoff = backoff;
+        List<StandingOrder> reconciled = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (StandingOrder o : store.loadStandingOrders()) {
+            nextId = Math.max(nextId, o.getId() + 1);
+            if (!o.isActive()) continue;
+            if (!o.getNextRun().isAfter(now) && alreadyPaid(o)) {
+                o = o.advanced();
+                reconciled.add(o);
+                logger.info("Standing order " + o.getId() + " was paid before the restart; moved on");
+            }
+            book.put(o.getId(), o);
+            if (o.isActive()) queue.add(o);
+        }
+        store.saveStandingOrders(reconciled);
+    }
+
+    // Checks for due orders every tickMillis on a background thread.
+    public synchronized StandingOrderEngine start(long tickMillis) {
+        if (ticker != null) return this;
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "standing-orders");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleWithFixedDelay(() -> {
+            try {
+                RunResult r = runDue(LocalDateTime.now());
+                if (r.getBatches() > 0) logger.info("Standing orders run: " + r);
+            } catch (IOException | RuntimeException e) {
+                logger.severe("Standing order run failed: " + e);
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (ticker != null) ticker.shutdownNow();
+    }
+
+    public StandingOrder create(String fromAccount, String toAccount, BigDecimal amount,
+                                StandingOrder.Frequency frequency, LocalDateTime firstRun)
+            throws ValidationException, IOException {
+        if (frequency == null || firstRun == null) throw new ValidationException("Frequency and first run are required.");
+        bank.checkTransfer(fromAccount, toAccount, amount);
+        synchronized (persistLock) {
+            StandingOrder o;
+            synchronized (this) {
+                if (list(fromAccount).size() >= MAX_ORDERS_PER_ACCOUNT) {
+                    throw new ValidationException("Too many standing orders for this account.");
+                }
+                o = new StandingOrder(nextId++, fromAccount, toAccount, amount, frequency, firstRun, 0, 0,
+                        firstRun, StandingOrder.Status.ACTIVE);
+                book.put(o.getId(), o);
+                queue.add(o);
+            }
+            store.saveStandingOrders(List.of(o));
+            logger.info("Standing order created: " + o);
+            return o;
+        }
+    }
+
+    // Active orders paying out of the account, soonest first; null lists every account's.
+    public synchronized List<StandingOrder> list(String fromAccount) {
+        List<StandingOrder> out = new ArrayList<>();
+        for (StandingOrder o : book.values()) {
+            if (o.isActive() && (fromAccount == null || o.getFromAccount().equals(fromAccount))) out.add(o);
+        }
+        out.sort(BY_NEXT_RUN);
+        return out;
+    }
+
+    // Cancels an order paying out of fromAccount; null lets an admin cancel any order.
+    public void cancel(String fromAccount, long id) throws ValidationException, IOException {
+        synchronized (persistLock) {
+            StandingOrder cancelled;
+            synchronized (this) {
+                StandingOrder o = book.get(id);
+                if (o == null || !o.isActive() || (fromAccount != null && !o.getFromAccount().equals(fromAccount))) {
+                    throw new ValidationException("No such standing order.");
+                }
+                cancelled = o.withStatus(StandingOrder.Status.CANCELLED);
+                book.put(id, cancelled);
+            }
+            store.saveStandingOrders(List.of(cancelled));
+            logger.info("Standing order cancelled: " + id);
+        }
+    }
+
+    // Executes every order due at or before now. Called by the ticker; callable directly.
+    public RunResult runDue(LocalDateTime now) throws IOException {
+        synchronized (runLock) {
+            List<StandingOrder> due = new ArrayList<>();
+            synchronized (this) {
+                while (!queue.isEmpty() && !queue.peek().getNextRun().isAfter(now)) {
+                    StandingOrder o = queue.poll();
+                    if (book.get(o.getId()) == o) due.add(o);   // skip cancelled and superseded versions
+                }
+            }
+            int batches = 0, paid = 0, retried = 0, failed = 0;
+            int done = 0;   // orders whose new state is in the book
+            try {
+                for (int from = 0; from < due.size(); from += batchSize) {
+                    List<StandingOrder> batch = due.subList(from, Math.min(due.size(), from + batchSize));
+                    List<Exception> outcomes = bank.transferBatch(batch);
+                    batches++;
+                    synchronized (persistLock) {
+                        List<StandingOrder> changed = new ArrayList<>(batch.size());
+                        synchronized (this) {
+                            for (int i = 0; i < batch.size(); i++) {
+                                StandingOrder o = batch.get(i);
+                                Exception outcome = outcomes.get(i);
+                                StandingOrder next;
+                                if (outcome == null) {
+                                    next = o.advanced();
+                                    paid++;
+                                } else if (outcome instanceof InsufficientFundsException) {
+                                    next = o.retried(now, maxRetries, backoff);
+                                    retried++;
+                                } else {
+                                    next = o.withStatus(StandingOrder.Status.FAILED);
+                                    failed++;
+                                    logger.warning("Standing order " + o.getId() + " failed: " + outcome.getMessage());
+                                }
+                                if (book.get(o.getId()) != o) continue;   // cancelled while it ran
+                                book.put(next.getId(), next);
+                                if (next.isActive()) queue.add(next);
+                                changed.add(next);
+                            }
+                        }
+                        done += batch.size();
+                        store.saveStandingOrders(changed);
+                    }
+                }
+            } finally {
+                // a failed batch and the ones after it were never run: back into the queue
+                synchronized (this) {
+                    for (StandingOrder o : due.subList(done, due.size())) {
+                        if (book.get(o.getId()) == o) queue.add(o);
+                    }
+                }
+            }
+            return new RunResult(batches, paid, retried, failed);
+        }
+    }
+
+    // Searches the whole history: transfers of this amount to the order's payee, a page at a time.
+    private boolean alreadyPaid(StandingOrder o) throws IOException {
+        String prefix = o.occurrenceTag() + " to ";
+        TransactionQuery query = TransactionQuery.all().withTypes(TransactionType.TRANSFER_OUT)
+                .withAmountBetween(o.getAmount(), o.getAmount()).withCounterparty(o.getToAccount())
+                .withPage(0, TransactionQuery.MAX_PAGE_SIZE);
+        while (true) {
+            TransactionPage page = store.searchTransactions(o.getFromAccount(), query);
+            for (Transaction tx : page.getItems()) {
+                if (tx.getDetails().startsWith(prefix)) return true;
+            }
+            if (!page.hasNext()) return false;
+            query = query.nextPage();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * StripedBalance.java - Extra balance of a hot account, split into per-thread stripes.
+ *
+ * The account's full balance is its own (base) balance plus the sum of the stripes. A credit
+ * locks only the stripe picked by the calling thread, so concurrent credits rarely meet.
+ * Operations that must see an exact balance, such as debits and deactivation, lock every stripe
+ * (in index order) and then debit the stripes before the base. A stripe never goes negative
+ * and credits only add, so a debit that found enough money under all stripe locks can never
+ * overdraw. retire() folds the stripes back into the account; credits still holding the
+ * retired instance see that and go back to the normal path. The account's records go through
+ * its HotJournal, so that their balanceAfter values stay exact.
+ */
+package atm;
+
+import java.math.BigDecimal;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class StripedBalance {
+    // counters padded so that neighbouring stripes do not share a cache line
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        volatile long cents;
+        @SuppressWarnings("unused") long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final HotJournal journal;
+    private volatile boolean retired;
+
+    public StripedBalance(int stripeCount) {
+        this(stripeCount, 0);
+    }
+
+    // openingCents: the account's balance when it turned hot, where its journal starts
+    StripedBalance(int stripeCount, long openingCents) {
+        this.journal = new HotJournal(openingCents);
+        int size = Integer.highestOneBit(Math.max(2, stripeCount - 1)) << 1;   // round up to a power of two
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) stripes[i] = new Stripe();
+        this.mask = size - 1;
+    }
+
+    public int stripeCount() { return stripes.length; }
+
+    // Lock-free sum; concurrent credits may or may not be included.
+    public long cents() {
+        long sum = 0;
+        for (Stripe s : stripes) sum += s.cents;
+        return sum;
+    }
+
+    public BigDecimal total() { return BigDecimal.valueOf(cents(), 2); }
+
+    boolean isRetired() { return retired; }
+
+    HotJournal journal() { return journal; }
+
+    // Convenience credit for callers that need no ordering with other records.
+    public boolean credit(long cents) {
+        int stripe = lockStripe();
+        try {
+            if (retired) return false;
+            creditLocked(stripe, cents);
+            return true;
+        } finally {
+            unlockStripe(stripe);
+        }
+    }
+
+    // --- credits: one stripe ---
+
+    // Locks and returns the calling thread's stripe index; pair with unlockStripe.
+    int lockStripe() {
+        int i = (int) Thread.currentThread().getId() & mask;   // pool threads have consecutive ids
+        stripes[i].lock.lock();
+        return i;
+    }
+
+    void creditLocked(int stripe, long cents) {
+        stripes[stripe].cents += cents;
+    }
+
+    void unlockStripe(int stripe) {
+        stripes[stripe].lock.unlock();
+    }
+
+    // --- exact operations: every stripe ---
+
+    void lockAll() {
+        for (Stripe s : stripes) s.lock.lock();
+    }
+
+    void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) stripes[i].lock.unlock();
+    }
+
+    // Takes up to cents from the stripes and returns how much was taken. Caller holds lockAll().
+    long debitLocked(long cents) {
+        long taken = 0;
+        for (int i = 0; i < stripes.length && taken < cents; i++) {
+            long part = Math.min(stripes[i].cents, cents - taken);
+            stripes[i].cents -= part;
+            taken += part;
+        }
+        return taken;
+    }
+
+    // Empties the stripes for good and returns what they held. Caller holds lockAll().
+    long retireLocked() {
+        retired = true;
+        long sum = 0;
+        for (Stripe s : stripes) {
+            sum += s.cents;
+            s.cents = 0;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * TimingWheel.java - Hashed timing wheel for large numbers of coarse-grained deadlines.
+ *
+ * Time is divided into ticks of tickMillis; an item due at tick t sits in bucket t % wheelSize
+ * together with items due whole rotations later. schedule() is O(1) and thread-safe. advance()
+ * must be called by a single thread (e.g. a scheduled ticker); it visits only the buckets for
+ * the ticks that passed, hands due items to the callback and leaves later rotations in place.
+ * Items are delivered at most one tick late, or one rotation late if scheduled concurrently
+ * with the tick that was already being processed.
+ */
+package atm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+public class TimingWheel<T> {
+    private static final class Entry<T> {
+        final T item;
+        final long deadlineTick;
+
+        Entry(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<ConcurrentLinkedQueue<Entry<T>>> buckets;
+    private volatile long currentTick;
+
+    public TimingWheel(long tickMillis, int wheelSize, long nowMillis) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("tickMillis must be > 0");
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;   // round up to a power of two
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) buckets.add(new ConcurrentLinkedQueue<>());
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    public void schedule(T item, long deadlineMillis) {
+        long tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        buckets.get((int) (tick & mask)).add(new Entry<>(item, tick));
+    }
+
+    // Delivers every item whose deadline is at or before nowMillis. Single caller only.
+    public void advance(long nowMillis, Consumer<T> onDue) {
+        long target = nowMillis / tickMillis;
+        long ticks = Math.min(target - currentTick, buckets.size());
+        long start = currentTick;
+        for (long i = 1; i <= ticks; i++) {
+            long t = start + i;
+            currentTick = Math.min(t, target);
+            ConcurrentLinkedQueue<Entry<T>> bucket = buckets.get((int) (t & mask));
+            List<Entry<T>> later = new ArrayList<>();
+            Entry<T> e;
+            while ((e = bucket.poll()) != null) {
+                if (e.deadlineTick <= target) onDue.accept(e.item);
+                else later.add(e);
+            }
+            bucket.addAll(later);
+        }
+        currentTick = Math.max(currentTick, target);
+    }
+}
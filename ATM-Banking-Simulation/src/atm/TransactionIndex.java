@@ -0,0 +1,406 @@
+/*
+ * TransactionIndex.java - Per-account columnar copy of the transaction log for fast searches.
+ *
+ * Each account's history is stored oldest first as parallel primitive arrays: timestamps
+ * (epoch nanos, UTC), amounts and balances (cents), type ordinals, and counterparty and details
+ * strings as ids into the account's own dictionary. Searches are plain loops over those arrays.
+ * The memory budget is maxResidentRows rows; a dictionary string counts as the rows its bytes
+ * would hold. When more are needed, the least recently used accounts are spilled, columns and
+ * dictionary together, to one file each under spillDir. A spilled account is read back and
+ * searched without holding the index lock, so appends and searches of resident accounts go on
+ * meanwhile; the copy becomes resident again afterwards unless the account changed in between.
+ * Spill files are only a cache: the index is rebuilt from the log at startup.
+ */
+package atm;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.logging.Logger;
+
+final class TransactionIndex {
+    private static final long NO_BALANCE = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    // rough heap sizes, to weigh dictionary strings against rows: a row takes 8+8+8+1+4+4 bytes
+    // of columns; a string its characters plus the String, list slot and map entry
+    private static final int ROW_BYTES = 33;
+    private static final int STRING_BYTES = 100;
+
+    // One account's rows and dictionary; all null while the account is spilled.
+    private static final class Columns {
+        final int id;
+        int size;
+        long[] timestamps;
+        long[] amounts;
+        long[] balances;
+        byte[] types;
+        int[] counterparties;
+        int[] details;
+        List<String> strings;
+        Map<String, Integer> stringIds;
+        long stringRows;      // what the dictionary counts against the budget
+        int generation;       // bumped on every spill; names the spill file
+
+        Columns(int id) {
+            this.id = id;
+        }
+
+        void allocate(int capacity) {
+            timestamps = new long[capacity];
+            amounts = new long[capacity];
+            balances = new long[capacity];
+            types = new byte[capacity];
+            counterparties = new int[capacity];
+            details = new int[capacity];
+        }
+
+        void grow() {
+            int capacity = timestamps.length * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            types = Arrays.copyOf(types, capacity);
+            counterparties = Arrays.copyOf(counterparties, capacity);
+            details = Arrays.copyOf(details, capacity);
+        }
+
+        // Takes over the rows and dictionary of a copy read from the spill file.
+        void adopt(Columns copy) {
+            size = copy.size;
+            timestamps = copy.timestamps;
+            amounts = copy.amounts;
+            balances = copy.balances;
+            types = copy.types;
+            counterparties = copy.counterparties;
+            details = copy.details;
+            strings = copy.strings;
+            stringIds = copy.stringIds;
+            stringRows = copy.stringRows;
+        }
+
+        void drop() {
+            timestamps = amounts = balances = null;
+            types = null;
+            counterparties = details = null;
+            strings = null;
+            stringIds = null;
+        }
+
+        boolean resident() { return timestamps != null; }
+
+        long cost() { return size + stringRows; }
+    }
+
+    private final Map<String, Columns> accounts = new HashMap<>();
+    private final LinkedHashMap<String, Columns> resident = new LinkedHashMap<>(16, 0.75f, true);   // LRU order
+    private final Path spillDir;
+    private final long maxResidentRows;
+    private final Logger logger;
+    private long residentRows;
+    private long residentStrings;
+    private long residentCost;
+    private long spills;
+    private long reloads;
+
+    TransactionIndex(Path spillDir, long maxResidentRows, Logger logger) throws IOException {
+        this.spillDir = spillDir;
+        this.maxResidentRows = maxResidentRows;
+        this.logger = logger;
+        deleteSpillFiles();
+    }
+
+    // Drops every account, e.g. before the index is rebuilt from the log. Copies being read
+    // outside the lock at that moment are not installed.
+    synchronized void clear() throws IOException {
+        accounts.clear();
+        resident.clear();
+        residentRows = residentStrings = residentCost = 0;
+        deleteSpillFiles();
+    }
+
+    private void deleteSpillFiles() throws IOException {
+        if (Files.exists(spillDir)) {
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(spillDir, "*.col")) {
+                for (Path p : stale) Files.delete(p);
+            }
+        }
+    }
+
+    synchronized void add(Transaction tx) throws IOException {
+        Columns c = columns(tx.getAccountNumber(), true);
+        if (c.size == c.timestamps.length) c.grow();
+        int i = c.size++;
+        c.timestamps[i] = nanos(tx.getTimestamp());
+        c.amounts[i] = tx.getAmount() == null ? 0 : cents(tx.getAmount());
+        c.balances[i] = tx.getBalanceAfter() == null ? NO_BALANCE : cents(tx.getBalanceAfter());
+        c.types[i] = (byte) tx.getType().ordinal();
+        c.counterparties[i] = intern(c, tx.getCounterparty());
+        c.details[i] = intern(c, tx.getDetails());
+        residentRows++;
+        residentCost++;
+        evictOverBudget();
+    }
+
+    List<Transaction> lastN(String accountNumber, int n) throws IOException {
+        Spilled spilled;
+        synchronized (this) {
+            Columns c = columns(accountNumber, false);
+            if (c == null) return new ArrayList<>();
+            if (c.resident()) return lastN(accountNumber, c, n);
+            spilled = open(c);
+        }
+        Columns copy = spilled.read();
+        List<Transaction> out = lastN(accountNumber, copy, n);
+        install(accountNumber, spilled, copy);
+        return out;
+    }
+
+    TransactionPage search(String accountNumber, TransactionQuery q) throws IOException {
+        Spilled spilled;
+        synchronized (this) {
+            Columns c = columns(accountNumber, false);
+            if (c == null) return new TransactionPage(new ArrayList<>(), q.getPage(), q.getPageSize(), 0);
+            if (c.resident()) return search(accountNumber, c, q);
+            spilled = open(c);
+        }
+        Columns copy = spilled.read();
+        TransactionPage page = search(accountNumber, copy, q);
+        install(accountNumber, spilled, copy);
+        return page;
+    }
+
+    synchronized long residentRows() { return residentRows; }
+    synchronized long residentStrings() { return residentStrings; }
+    synchronized long spillCount() { return spills; }
+    synchronized long reloadCount() { return reloads; }
+
+    // --- searching (c is resident under the lock, or a private copy) ---
+
+    private static List<Transaction> lastN(String accountNumber, Columns c, int n) {
+        List<Transaction> out = new ArrayList<>();
+        for (int i = Math.max(0, c.size - n); i < c.size; i++) out.add(row(accountNumber, c, i));
+        return out;
+    }
+
+    private static TransactionPage search(String accountNumber, Columns c, TransactionQuery q) {
+        List<Transaction> items = new ArrayList<>();
+        int cp = q.getCounterparty() == null ? -1 : c.stringIds.getOrDefault(q.getCounterparty(), -2);
+        if (cp == -2) return new TransactionPage(items, q.getPage(), q.getPageSize(), 0);
+
+        int typeMask = 0;
+        for (TransactionType t : q.getTypes()) typeMask |= 1 << t.ordinal();
+        if (typeMask == 0) typeMask = -1;
+        long minAmount = q.getMinAmount() == null ? Long.MIN_VALUE : q.getMinAmount().setScale(2, RoundingMode.CEILING).unscaledValue().longValueExact();
+        long maxAmount = q.getMaxAmount() == null ? Long.MAX_VALUE : q.getMaxAmount().setScale(2, RoundingMode.FLOOR).unscaledValue().longValueExact();
+        long from = q.getFrom() == null ? Long.MIN_VALUE : nanos(q.getFrom());
+        long to = q.getTo() == null ? Long.MAX_VALUE : nanos(q.getTo());
+        long skip = (long) q.getPage() * q.getPageSize();
+
+        long[] timestamps = c.timestamps, amounts = c.amounts;
+        byte[] types = c.types;
+        int[] counterparties = c.counterparties;
+        long matched = 0;
+        for (int i = c.size - 1; i >= 0; i--) {
+            if ((typeMask & (1 << types[i])) == 0) continue;
+            long amount = amounts[i];
+            if (amount < minAmount || amount > maxAmount) continue;
+            long ts = timestamps[i];
+            if (ts < from || ts >= to) continue;
+            if (cp >= 0 && counterparties[i] != cp) continue;
+            if (matched >= skip && items.size() < q.getPageSize()) items.add(row(accountNumber, c, i));
+            matched++;
+        }
+        return new TransactionPage(items, q.getPage(), q.getPageSize(), matched);
+    }
+
+    // --- residency (lock held unless noted) ---
+
+    // A spill file opened under the lock, to be read without it. The file stays readable even if
+    // a concurrent append reloads the account and deletes it.
+    private static final class Spilled {
+        final Columns columns;
+        final int generation;
+        final DataInputStream in;
+
+        Spilled(Columns columns, DataInputStream in) {
+            this.columns = columns;
+            this.generation = columns.generation;
+            this.in = in;
+        }
+
+        // Called without the lock.
+        Columns read() throws IOException {
+            try (DataInputStream stream = in) {
+                Columns copy = new Columns(columns.id);
+                readColumns(stream, copy);
+                return copy;
+            }
+        }
+    }
+
+    private Spilled open(Columns c) throws IOException {
+        return new Spilled(c, new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile(c)))));
+    }
+
+    // Makes a copy read outside the lock resident, if the account was not reloaded, spilled again
+    // or cleared meanwhile.
+    private synchronized void install(String accountNumber, Spilled spilled, Columns copy) {
+        Columns c = spilled.columns;
+        if (accounts.get(accountNumber) != c || c.resident() || c.generation != spilled.generation) return;
+        c.adopt(copy);
+        deleteSpillFile(c);
+        admit(accountNumber, c);
+    }
+
+    private Columns columns(String accountNumber, boolean create) throws IOException {
+        Columns c = accounts.get(accountNumber);
+        if (c == null) {
+            if (!create) return null;
+            c = new Columns(accounts.size());
+            c.allocate(INITIAL_CAPACITY);
+            c.strings = new ArrayList<>();
+            c.stringIds = new HashMap<>();
+            accounts.put(accountNumber, c);
+            resident.put(accountNumber, c);
+            intern(c, "");   // id 0: no counterparty / no details
+        } else if (!c.resident()) {
+            // appends need the live columns; searches read spilled accounts outside the lock instead
+            if (create) {
+                try (DataInputStream in = open(c).in) {
+                    readColumns(in, c);
+                }
+                deleteSpillFile(c);
+                admit(accountNumber, c);
+            }
+        } else {
+            resident.get(accountNumber);   // mark as recently used
+        }
+        return c;
+    }
+
+    private void admit(String accountNumber, Columns c) {
+        reloads++;
+        residentRows += c.size;
+        residentStrings += c.strings.size();
+        residentCost += c.cost();
+        resident.put(accountNumber, c);
+        evictOverBudget();
+    }
+
+    // Spills least recently used accounts, never the one just touched.
+    private void evictOverBudget() {
+        Iterator<Columns> lru = resident.values().iterator();
+        while (residentCost > maxResidentRows && resident.size() > 1) {
+            Columns victim = lru.next();
+            try {
+                spill(victim);
+            } catch (IOException e) {
+                logger.warning("Index spill failed, keeping rows in memory: " + e);
+                return;
+            }
+            lru.remove();
+            residentRows -= victim.size;
+            residentStrings -= victim.strings.size();
+            residentCost -= victim.cost();
+            victim.drop();
+            spills++;
+        }
+    }
+
+    private void spill(Columns c) throws IOException {
+        Files.createDirectories(spillDir);
+        c.generation++;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(spillFile(c))))) {
+            out.writeInt(c.size);
+            for (int i = 0; i < c.size; i++) out.writeLong(c.timestamps[i]);
+            for (int i = 0; i < c.size; i++) out.writeLong(c.amounts[i]);
+            for (int i = 0; i < c.size; i++) out.writeLong(c.balances[i]);
+            out.write(c.types, 0, c.size);
+            for (int i = 0; i < c.size; i++) out.writeInt(c.counterparties[i]);
+            for (int i = 0; i < c.size; i++) out.writeInt(c.details[i]);
+            out.writeInt(c.strings.size());
+            for (String s : c.strings) out.writeUTF(s);
+        }
+    }
+
+    private static void readColumns(DataInputStream in, Columns c) throws IOException {
+        int size = in.readInt();
+        c.allocate(Math.max(INITIAL_CAPACITY, size));
+        for (int i = 0; i < size; i++) c.timestamps[i] = in.readLong();
+        for (int i = 0; i < size; i++) c.amounts[i] = in.readLong();
+        for (int i = 0; i < size; i++) c.balances[i] = in.readLong();
+        in.readFully(c.types, 0, size);
+        for (int i = 0; i < size; i++) c.counterparties[i] = in.readInt();
+        for (int i = 0; i < size; i++) c.details[i] = in.readInt();
+        c.size = size;
+        int strings = in.readInt();
+        c.strings = new ArrayList<>(strings);
+        c.stringIds = new HashMap<>(strings * 2);
+        c.stringRows = 0;
+        for (int i = 0; i < strings; i++) {
+            String s = in.readUTF();
+            c.strings.add(s);
+            c.stringIds.put(s, i);
+            c.stringRows += weight(s);
+        }
+    }
+
+    // A reader outside the lock may still have the file open; it is deleted at the next startup then.
+    private void deleteSpillFile(Columns c) {
+        try {
+            Files.deleteIfExists(spillFile(c));
+        } catch (IOException e) {
+            logger.fine("Spill file kept for now: " + e);
+        }
+    }
+
+    private Path spillFile(Columns c) {
+        return spillDir.resolve(c.id + "-" + c.generation + ".col");
+    }
+
+    // --- encoding ---
+
+    private static Transaction row(String accountNumber, Columns c, int i) {
+        long nanos = c.timestamps[i];
+        LocalDateTime ts = LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+                (int) Math.floorMod(nanos, 1_000_000_000L), ZoneOffset.UTC);
+        BigDecimal balance = c.balances[i] == NO_BALANCE ? null : BigDecimal.valueOf(c.balances[i], 2);
+        return new Transaction(ts, accountNumber, TYPES[c.types[i]], BigDecimal.valueOf(c.amounts[i], 2), balance,
+                c.strings.get(c.details[i]), c.strings.get(c.counterparties[i]));
+    }
+
+    private int intern(Columns c, String s) {
+        Integer id = c.stringIds.get(s);
+        if (id == null) {
+            id = c.strings.size();
+            c.strings.add(s);
+            c.stringIds.put(s, id);
+            long w = weight(s);
+            c.stringRows += w;
+            residentStrings++;
+            residentCost += w;
+        }
+        return id;
+    }
+
+    private static long weight(String s) {
+        return (STRING_BYTES + s.length() + ROW_BYTES - 1) / ROW_BYTES;
+    }
+
+    private static long nanos(LocalDateTime ts) {
+        return ts.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + ts.getNano();
+    }
+
+    private static long cents(BigDecimal v) {
+        return Account.normalize(v).unscaledValue().longValueExact();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * TransactionPage.java - One page of transaction search results, newest first.
+ */
+package atm;
+
+import java.util.List;
+
+public class TransactionPage {
+    private final List<Transaction> items;
+    private final int page;
+    private final int pageSize;
+    private final long totalMatches;
+
+    public TransactionPage(List<Transaction> items, int page, int pageSize, long totalMatches) {
+        this.items = List.copyOf(items);
+        this.page = page;
+        this.pageSize = pageSize;
+        this.totalMatches = totalMatches;
+    }
+
+    public List<Transaction> getItems() { return items; }
+    public int getPage() { return page; }
+    public int getPageSize() { return pageSize; }
+    public long getTotalMatches() { return totalMatches; }
+
+    public boolean hasNext() {
+        return (long) (page + 1) * pageSize < totalMatches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("page %d (%d of %d matches)", page + 1, items.size(), totalMatches);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * TransactionQuery.java - Filter and page for searching one account's transaction history.
+ *
+ * Immutable; each with...() returns a copy. Unset filters match everything. Amounts are
+ * inclusive, dates are [from, to). Results come newest first, pageSize per page.
+ */
+package atm;
+
+import atm.exceptions.ValidationException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.Set;
+
+public class TransactionQuery {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final Set<TransactionType> types;   // empty: any type
+    private final BigDecimal minAmount;
+    private final BigDecimal maxAmount;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final String counterparty;
+    private final int page;
+    private final int pageSize;
+
+    private TransactionQuery(Set<TransactionType> types, BigDecimal minAmount, BigDecimal maxAmount,
+                             LocalDateTime from, LocalDateTime to, String counterparty, int page, int pageSize) {
+        this.types = types;
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+        this.from = from;
+        this.to = to;
+        this.counterparty = counterparty;
+        this.page = page;
+        this.pageSize = pageSize;
+    }
+
+    public static TransactionQuery all() {
+        return new TransactionQuery(EnumSet.noneOf(TransactionType.class), null, null, null, null, null,
+                0, DEFAULT_PAGE_SIZE);
+    }
+
+    public TransactionQuery withTypes(TransactionType first, TransactionType... rest) {
+        return new TransactionQuery(EnumSet.of(first, rest), minAmount, maxAmount, from, to, counterparty, page, pageSize);
+    }
+
+    public TransactionQuery withAmountBetween(BigDecimal min, BigDecimal max) {
+        return new TransactionQuery(types, min, max, from, to, counterparty, page, pageSize);
+    }
+
+    public TransactionQuery withDateBetween(LocalDateTime from, LocalDateTime to) {
+        return new TransactionQuery(types, minAmount, maxAmount, from, to, counterparty, page, pageSize);
+    }
+
+    public TransactionQuery withCounterparty(String counterparty) {
+        String cp = counterparty == null || counterparty.isBlank() ? null : counterparty.trim();
+        return new TransactionQuery(types, minAmount, maxAmount, from, to, cp, page, pageSize);
+    }
+
+    public TransactionQuery withPage(int page, int pageSize) {
+        return new TransactionQuery(types, minAmount, maxAmount, from, to, counterparty, page, pageSize);
+    }
+
+    public TransactionQuery nextPage() {
+        return withPage(page + 1, pageSize);
+    }
+
+    public Set<TransactionType> getTypes() { return types; }
+    public BigDecimal getMinAmount() { return minAmount; }
+    public BigDecimal getMaxAmount() { return maxAmount; }
+    public LocalDateTime getFrom() { return from; }
+    public LocalDateTime getTo() { return to; }
+    public String getCounterparty() { return counterparty; }
+    public int getPage() { return page; }
+    public int getPageSize() { return pageSize; }
+
+    public void validate() throws ValidationException {
+        if (page < 0) throw new ValidationException("Page must be >= 0.");
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException("Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        if (minAmount != null && maxAmount != null && minAmount.compareTo(maxAmount) > 0) {
+            throw new ValidationException("Minimum amount is above the maximum.");
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new ValidationException("Start date must be before the end date.");
+        }
+    }
+
+    // Row-at-a-time check, for stores without a search index.
+    public boolean matches(Transaction tx) {
+        if (!types.isEmpty() && !types.contains(tx.getType())) return false;
+        BigDecimal amount = tx.getAmount() == null ? BigDecimal.ZERO : tx.getAmount();
+        if (minAmount != null && amount.compareTo(minAmount) < 0) return false;
+        if (maxAmount != null && amount.compareTo(maxAmount) > 0) return false;
+        if (from != null && tx.getTimestamp().isBefore(from)) return false;
+        if (to != null && !tx.getTimestamp().isBefore(to)) return false;
+        return counterparty == null || counterparty.equals(tx.getCounterparty());
+    }
+}
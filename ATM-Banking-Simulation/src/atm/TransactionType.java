@@ -11,5 +11,7 @@ public enum TransactionType {
     TRANSFER_IN,
     TRANSFER_OUT,
     ACCOUNT_CREATE,
-    ACCOUNT_DELETE
+    ACCOUNT_DELETE,
+    INTEREST,
+    FEE
 }
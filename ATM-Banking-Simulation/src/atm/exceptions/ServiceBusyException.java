@@ -0,0 +1,9 @@
+/*
+ * ServiceBusyException.java - Thrown when a request is shed under overload; the caller should retry later.
+ * Unchecked so it can pass through the existing ATM method signatures.
+ */
+package atm.exceptions;
+
+public class ServiceBusyException extends RuntimeException {
+    public ServiceBusyException(String message) { super(message); }
+}
@@ -0,0 +1,143 @@
+/*
+ * AccountTableTests.java - CompactAccountTable behaves like HashAccountTable behind Bank.
+ * Run with: javac ... && java -ea -cp out AccountTableTests
+ */
+import atm.*;
+import atm.exceptions.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+public class AccountTableTests {
+    public static void main(String[] args) throws Exception {
+        Logger logger = Logger.getLogger("atm-tests");
+        logger.setUseParentHandlers(false);
+
+        // same seed data, two table implementations
+        Path dir = Files.createTempDirectory("atm-table");
+        Files.copy(Path.of("data", "accounts.csv"), dir.resolve("accounts.csv"));
+        FileDataStore store = new FileDataStore(dir);
+        Bank bank = new Bank(store, logger, new CompactAccountTable());
+        ATM atm = new ATM(bank);
+
+        User alice = atm.login("100001", "1111");
+        assert alice.getDisplayName().equals("Alice") : "Name not decoded";
+        try {
+            atm.login("100001", "9999");
+            assert false : "Wrong PIN accepted";
+        } catch (AuthenticationException expected) { }
+        try {
+            atm.login("0100001", "1111");
+            assert false : "Non-canonical account number accepted";
+        } catch (AuthenticationException expected) { }
+
+        BigDecimal start = new BigDecimal(atm.balance(alice));
+        atm.deposit(alice, new BigDecimal("10.25"));
+        atm.withdraw(alice, new BigDecimal("0.25"));
+        atm.transfer(alice, "100002", new BigDecimal("5.00"));
+        assert new BigDecimal(atm.balance(alice)).compareTo(start.add(new BigDecimal("5.00"))) == 0 : "Balance drift";
+        try {
+            atm.withdraw(alice, new BigDecimal("1000000.00"));
+            assert false : "Overdraft allowed";
+        } catch (InsufficientFundsException expected) { }
+
+        Account created = atm.adminCreate("Zoë, Jr.", Account.Role.ADMIN, new BigDecimal("7.00"), "4321");
+        assert created.getRole() == Account.Role.ADMIN && created.getName().equals("Zoë, Jr.") : "Created row mismatch";
+        atm.adminDelete("100003");
+
+        // persisted file reloads identically into the default table
+        Bank reloaded = new Bank(new FileDataStore(dir), logger);
+        for (Account a : bank.snapshotAccounts()) {
+            Account b = reloaded.snapshotAccounts().stream()
+                    .filter(x -> x.getAccountNumber().equals(a.getAccountNumber())).findFirst().orElseThrow();
+            assert a.getBalance().compareTo(b.getBalance()) == 0 && a.getPinHash().equals(b.getPinHash())
+                    && a.getSalt().equals(b.getSalt()) && a.getName().equals(b.getName())
+                    && a.getRole() == b.getRole() && a.isActive() == b.isActive()
+                    : "Round trip mismatch for " + a.getAccountNumber();
+        }
+        new ATM(reloaded).login(created.getAccountNumber(), "4321");
+
+        // growth across pages and index resizes
+        CompactAccountTable big = new CompactAccountTable();
+        String salt = SecurityUtil.generateSaltHex(8);
+        String hash = SecurityUtil.hashPin("0000", salt);
+        int n = 200_000;
+        for (int i = 0; i < n; i++) {
+            big.put(new Account(String.valueOf(1_000_000 + i), "C" + i, Account.Role.USER,
+                    new BigDecimal(i % 1000), hash, salt, true));
+        }
+        assert big.size() == n : "Size mismatch";
+        for (int i = 0; i < n; i += 997) {
+            Account a = big.get(String.valueOf(1_000_000 + i));
+            assert a != null && a.getBalance().compareTo(new BigDecimal(i % 1000)) == 0 : "Lookup failed at " + i;
+        }
+        assert big.get("999999") == null && !big.containsKey("abc") : "Phantom account";
+        // one flyweight per row, reused by later lookups and by values()
+        Account view = big.get("1000997");
+        assert big.get(new String("1000997")) == view && big.values().contains(view) : "Row view not reused";
+        view.deposit(BigDecimal.ONE);
+        assert big.get("1000997").getBalance().compareTo(new BigDecimal(998)) == 0 : "View not live";
+
+        // a rename is read back from the name file; an unchanged put keeps the stored name
+        Account renamed = big.get("1000007");
+        renamed.setName("Renamed Ñame");
+        big.put(new Account("1000007", "Renamed Ñame", Account.Role.USER, BigDecimal.ONE, hash, salt, true));
+        assert big.get("1000007").getName().equals("Renamed Ñame") && big.get("1000008").getName().equals("C8")
+                : "Name column mismatch";
+
+        System.out.printf("Heap per account: hash=%d bytes, compact=%d bytes, compact all looked up=%d bytes%n",
+                heapPerAccount(new HashAccountTable(), hash, salt, false),
+                heapPerAccount(new CompactAccountTable(), hash, salt, false),
+                heapPerAccount(new CompactAccountTable(), hash, salt, true));
+        System.out.printf("Lookup (get + balance + active): hash=%.1f ns, compact=%.1f ns%n",
+                nanosPerLookup(new HashAccountTable(), hash, salt), nanosPerLookup(new CompactAccountTable(), hash, salt));
+        System.out.println("All account table tests passed");
+    }
+
+    private static long heapPerAccount(AccountTable table, String hash, String salt, boolean lookUp) {
+        int n = 100_000;
+        long before = usedHeap();
+        for (int i = 0; i < n; i++) {
+            // fresh strings, as if parsed from accounts.csv
+            table.put(new Account(String.valueOf(2_000_000 + i), new String("Customer" + i), Account.Role.USER,
+                    new BigDecimal("1234.56"), new String(hash), new String(salt), true));
+        }
+        // the compact table keeps a view for each account once it has been looked up
+        if (lookUp) for (int i = 0; i < n; i++) table.get(String.valueOf(2_000_000 + i));
+        long after = usedHeap();
+        if (table.size() != n) throw new AssertionError();
+        return (after - before) / n;
+    }
+
+    // What Bank does per operation: find the account and read its state, random account order.
+    // Each lookup uses a fresh number string, as parsed from a request, so no hash is cached.
+    private static double nanosPerLookup(AccountTable table, String hash, String salt) {
+        int n = 200_000;
+        for (int i = 0; i < n; i++) {
+            table.put(new Account(String.valueOf(3_000_000 + i), "Customer" + i, Account.Role.USER,
+                    new BigDecimal("12.34"), hash, salt, true));
+        }
+        java.util.Random rnd = new java.util.Random(42);
+        int[] order = new int[1 << 20];
+        for (int i = 0; i < order.length; i++) order[i] = rnd.nextInt(n);
+        long sink = 0, best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {   // the first rounds warm up the JIT
+            long start = System.nanoTime();
+            for (int i : order) {
+                Account a = table.get(String.valueOf(3_000_000 + i));
+                if (a.isActive()) sink += a.getBalance().signum();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sink == 0) throw new AssertionError();
+        return (double) best / order.length;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * AdmissionControlTests.java - Priority hand-off, load shedding and metrics of AdmissionController.
+ * Run with: javac ... && java -ea -cp out AdmissionControlTests
+ */
+import atm.*;
+import atm.AdmissionController.OperationClass;
+import atm.exceptions.ServiceBusyException;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+public class AdmissionControlTests {
+    public static void main(String[] args) throws Exception {
+        AdmissionController ac = new AdmissionController(1);
+        ac.configure(OperationClass.STANDARD, 1, 5000);
+        ac.configure(OperationClass.READ, 4, 5000);
+        ac.configure(OperationClass.BULK, 4, 50);
+
+        // occupy the only slot
+        ac.acquire(OperationClass.STANDARD);
+
+        // bulk alone waits, then times out quickly
+        assert busy(() -> ac.acquire(OperationClass.BULK)) : "Bulk should time out";
+
+        // a STANDARD and a READ queue up; READ must be admitted first
+        List<OperationClass> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        Thread std = waiter(ac, OperationClass.STANDARD, order, done);
+        awaitQueued(ac, OperationClass.STANDARD);
+        Thread read = waiter(ac, OperationClass.READ, order, done);
+        awaitQueued(ac, OperationClass.READ);
+
+        // STANDARD queue (capacity 1) is full, and bulk is shed while READ waits
+        assert busy(() -> ac.acquire(OperationClass.STANDARD)) : "Full queue should shed";
+        assert busy(() -> ac.acquire(OperationClass.BULK)) : "Bulk should be shed behind READ";
+
+        ac.release();
+        done.await();
+        std.join();
+        read.join();
+        assert order.equals(List.of(OperationClass.READ, OperationClass.STANDARD)) : "Priority order " + order;
+        assert ac.inFlight() == 0 : "Slots leaked";
+
+        AdmissionController.ClassStats bulk = stat(ac, OperationClass.BULK);
+        AdmissionController.ClassStats standard = stat(ac, OperationClass.STANDARD);
+        assert bulk.getRejectedTimeout() == 1 && bulk.getRejectedPriority() == 1 && bulk.getRejectedQueueFull() == 0
+                : "Bulk stats " + bulk;
+        assert standard.getAdmitted() == 2 && standard.getRejectedQueueFull() == 1 : "Standard stats " + standard;
+        assert standard.getMaxWaitNanos() > 0 : "Wait time not recorded";
+
+        // history reads and searches are reads, like balance
+        AdmissionController gate = new AdmissionController(1);
+        Logger logger = Logger.getLogger("atm-admission");
+        logger.setUseParentHandlers(false);
+        Bank bank = new Bank(new FileDataStore(Files.createTempDirectory("atm-admission")), logger);
+        bank.createAccount("Reader", Account.Role.USER, new BigDecimal("5.00"), "1234");
+        AdmissionControlledATM atm = new AdmissionControlledATM(bank, gate);
+        User reader = new User(bank.snapshotAccounts().get(0));
+        atm.balance(reader);
+        atm.lastN(reader, 5);
+        atm.search(reader, TransactionQuery.all());
+        assert stat(gate, OperationClass.READ).getAdmitted() == 3 : "Read stats " + stat(gate, OperationClass.READ);
+        assert stat(gate, OperationClass.STANDARD).getAdmitted() == 0 : "Standard stats " + stat(gate, OperationClass.STANDARD);
+
+        System.out.println("All admission control tests passed");
+    }
+
+    private static Thread waiter(AdmissionController ac, OperationClass cls, List<OperationClass> order, CountDownLatch done) {
+        Thread t = new Thread(() -> {
+            ac.acquire(cls);
+            order.add(cls);
+            ac.release();
+            done.countDown();
+        });
+        t.start();
+        return t;
+    }
+
+    private static void awaitQueued(AdmissionController ac, OperationClass cls) throws InterruptedException {
+        while (stat(ac, cls).getQueueDepth() == 0) Thread.sleep(1);
+    }
+
+    private static AdmissionController.ClassStats stat(AdmissionController ac, OperationClass cls) {
+        return ac.stats().get(cls.ordinal());
+    }
+
+    private static boolean busy(Runnable r) {
+        try {
+            r.run();
+            return false;
+        } catch (ServiceBusyException e) {
+            return true;
+        }
+    }
+}
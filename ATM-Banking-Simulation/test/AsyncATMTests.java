@@ -0,0 +1,113 @@
+/*
+ * AsyncATMTests.java - Ordering, transfer coordination and money safety of AsyncATM.
+ * Run with: javac ... && java -ea -cp out AsyncATMTests
+ */
+import atm.*;
+import atm.exceptions.InsufficientFundsException;
+import atm.exceptions.ValidationException;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+public class AsyncATMTests {
+    public static void main(String[] args) throws Exception {
+        Logger logger = Logger.getLogger("atm-async");
+        logger.setUseParentHandlers(false);
+        Bank bank = new Bank(new FileDataStore(Files.createTempDirectory("atm-async")), logger);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        AsyncATM async = new AsyncATM(bank, pool);
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            String acc = bank.createAccount("Async" + i, Account.Role.USER, new BigDecimal("100.00"), "0000").getAccountNumber();
+            users.add(async.login(acc, "0000").get(5, TimeUnit.SECONDS));
+        }
+        User a = users.get(0);
+
+        // requests for one account complete in issue order and see each other's effects
+        List<Integer> completed = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int n = i;
+            inFlight.add(async.deposit(a, new BigDecimal("1.00")).thenRun(() -> completed.add(n)));
+        }
+        String balance = async.balance(a).get(10, TimeUnit.SECONDS);
+        assert new BigDecimal(balance).compareTo(new BigDecimal("300.00")) == 0 : "Balance read overtook deposits: " + balance;
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        for (int i = 0; i < completed.size(); i++) assert completed.get(i) == i : "Deposits completed out of order";
+
+        // failures surface through the future with the synchronous exception types
+        assert cause(async.withdraw(users.get(1), new BigDecimal("1000.00"))) instanceof InsufficientFundsException;
+        assert cause(async.transfer(a, a.getAccount().getAccountNumber(), BigDecimal.ONE)) instanceof ValidationException;
+        assert cause(async.transfer(a, "nope", BigDecimal.ONE)) instanceof ValidationException;
+
+        // opposing and random transfers, mixed with synchronous ATM traffic on the same Bank
+        BigDecimal before = total(bank);
+        ATM sync = new ATM(bank);
+        Random rnd = new Random(7);
+        inFlight.clear();
+        for (int i = 0; i < 3000; i++) {
+            User from = users.get(rnd.nextInt(users.size()));
+            User to = users.get(rnd.nextInt(users.size()));
+            if (from == to) continue;
+            inFlight.add(async.transfer(from, to.getAccount().getAccountNumber(), BigDecimal.valueOf(1 + rnd.nextInt(2000), 2))
+                    .exceptionally(e -> null));
+        }
+        Thread syncTraffic = new Thread(() -> {
+            for (int i = 0; i < 300; i++) {
+                try {
+                    sync.transfer(users.get(i % 2), users.get(1 - i % 2).getAccount().getAccountNumber(), new BigDecimal("0.50"));
+                } catch (Exception ignored) {
+                    // insufficient funds is fine here
+                }
+            }
+        });
+        syncTraffic.start();
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+        syncTraffic.join();
+        assert total(bank).compareTo(before) == 0 : "Money not conserved: " + total(bank) + " != " + before;
+        for (User u : users) {
+            assert bank.balance(u.getAccount().getAccountNumber()).signum() >= 0 : "Negative balance";
+        }
+
+        // a drained mailbox is dropped; requests that find it gone still run in order
+        AccountMailboxes boxes = new AccountMailboxes(pool);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        inFlight.clear();
+        for (int i = 0; i < 300; i++) {
+            int n = i;
+            inFlight.add(boxes.submit("acc" + i % 30, () -> n));
+            inFlight.add(boxes.submit("one", () -> order.add(n)));
+            if (i % 20 == 0) Thread.sleep(2);
+        }
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        for (int i = 0; i < order.size(); i++) assert order.get(i) == i : "Out of order after a mailbox was dropped";
+        long deadline = System.currentTimeMillis() + 5000;
+        while (boxes.mailboxCount() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assert boxes.mailboxCount() == 0 : boxes.mailboxCount() + " idle mailboxes kept";
+
+        pool.shutdown();
+        assert cause(async.deposit(a, BigDecimal.ONE)) instanceof RejectedExecutionException : "Shutdown not reported";
+        System.out.println("All async ATM tests passed");
+    }
+
+    private static Throwable cause(CompletableFuture<?> f) throws Exception {
+        try {
+            f.get(5, TimeUnit.SECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    private static BigDecimal total(Bank bank) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (Account acc : bank.snapshotAccounts()) sum = sum.add(acc.getBalance());
+        return sum;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * BatchPostingTests.java - Interest/fee posting job: chunked posting, persistence and resume.
+ * Run with: javac ... && java -ea -cp out BatchPostingTests
+ */
+import atm.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+public class BatchPostingTests {
+    public static void main(String[] args) throws Exception {
+        Logger logger = Logger.getLogger("atm-tests");
+        logger.setUseParentHandlers(false);
+        Path dir = Files.createTempDirectory("atm-posting");
+        FileDataStore store = new FileDataStore(dir);
+        Bank bank = new Bank(store, logger);
+
+        for (int i = 0; i < 23; i++) {
+            bank.createAccount("Customer" + i, Account.Role.USER, new BigDecimal("100.00"), "1234");
+        }
+        Account poor = bank.createAccount("Poor", Account.Role.USER, new BigDecimal("1.00"), "1234");
+        Account admin = bank.createAccount("Ops", Account.Role.ADMIN, new BigDecimal("100.00"), "1234");
+
+        // 1% interest, small chunks in parallel
+        BatchPostingJob.Result r = bank.postingJob(BatchPostingJob.Kind.INTEREST, new BigDecimal("1"), "2024-06")
+                .withChunking(5, 4).call();
+        assert r.getAccountsPosted() == 24 : "Expected 24 interest postings, got " + r;
+        assert r.getChunksRun() == 5 && r.getChunksFailed() == 0 : "Unexpected chunk counts " + r;
+        assert bank.balance(poor.getAccountNumber()).compareTo(new BigDecimal("1.01")) == 0 : "Interest on 1.00";
+        assert bank.balance(admin.getAccountNumber()).compareTo(new BigDecimal("100.00")) == 0 : "Admin accounts are not posted";
+
+        // rerunning the same period is a no-op thanks to the checkpoint
+        BatchPostingJob.Result again = bank.postingJob(BatchPostingJob.Kind.INTEREST, new BigDecimal("1"), "2024-06")
+                .withChunking(5, 4).call();
+        assert again.getAccountsPosted() == 0 && again.getChunksResumed() == 5 : "Resume should skip all chunks " + again;
+
+        // fees never overdraw: the 1.01 account is skipped
+        BatchPostingJob.Result fees = bank.postingJob(BatchPostingJob.Kind.FEE, new BigDecimal("2.00"), "2024-06")
+                .withChunking(10, 2).call();
+        assert fees.getAccountsPosted() == 23 && fees.getAccountsSkipped() == 1 : "Fee counts " + fees;
+        assert bank.balance(poor.getAccountNumber()).compareTo(new BigDecimal("1.01")) == 0 : "Poor account charged";
+
+        // persisted state matches memory
+        Map<String, BigDecimal> persisted = new HashMap<>();
+        for (Account a : new FileDataStore(dir).loadAccounts()) persisted.put(a.getAccountNumber(), a.getBalance());
+        for (Account a : bank.snapshotAccounts()) {
+            assert a.getBalance().compareTo(persisted.get(a.getAccountNumber())) == 0
+                    : "accounts.csv out of sync for " + a.getAccountNumber();
+        }
+        List<Transaction> last = store.loadLastNTransactions(poor.getAccountNumber(), 5);
+        assert last.get(last.size() - 1).getType() == TransactionType.INTEREST : "Interest record missing";
+
+        // a crash between posting a chunk and checkpointing it: the resume does not post it again
+        Path crashDir = Files.createTempDirectory("atm-posting-crash");
+        CrashingStore crashing = new CrashingStore(new FileDataStore(crashDir));
+        Bank crashBank = new Bank(crashing, logger);
+        for (int i = 0; i < 6; i++) crashBank.createAccount("C" + i, Account.Role.USER, new BigDecimal("100.00"), "1234");
+        crashing.failDone = true;
+        BatchPostingJob.Result crashed = crashBank.postingJob(BatchPostingJob.Kind.INTEREST, new BigDecimal("10"), "2024-07")
+                .withChunking(4, 1).call();
+        assert crashed.getChunksFailed() == 2 : "Checkpoint failures not reported " + crashed;
+        crashing.failDone = false;
+        BatchPostingJob.Result resumed = crashBank.postingJob(BatchPostingJob.Kind.INTEREST, new BigDecimal("10"), "2024-07")
+                .withChunking(4, 1).call();
+        assert resumed.getAccountsPosted() == 0 : "Posted twice after a crash " + resumed;
+        for (Account a : crashBank.snapshotAccounts()) {
+            assert a.getBalance().compareTo(new BigDecimal("110.00")) == 0 : "Interest applied twice: " + a.getBalance();
+        }
+
+        // the log write fails: the chunk is undone in memory, and running it again posts it once
+        Path logDir = Files.createTempDirectory("atm-posting-log");
+        CrashingStore failing = new CrashingStore(new FileDataStore(logDir));
+        Bank logBank = new Bank(failing, logger);
+        for (int i = 0; i < 4; i++) logBank.createAccount("L" + i, Account.Role.USER, new BigDecimal("100.00"), "1234");
+        failing.failAppends = true;
+        BatchPostingJob.Result unwritten = logBank.postingJob(BatchPostingJob.Kind.INTEREST, new BigDecimal("10"), "2024-09")
+                .withChunking(4, 1).call();
+        failing.failAppends = false;
+        assert unwritten.getChunksFailed() == 1 : unwritten;
+        for (Account a : logBank.snapshotAccounts()) {
+            assert a.getBalance().compareTo(new BigDecimal("100.00")) == 0 : "Unlogged interest kept: " + a.getBalance();
+        }
+        BatchPostingJob.Result rerun = logBank.postingJob(BatchPostingJob.Kind.INTEREST, new BigDecimal("10"), "2024-09")
+                .withChunking(4, 1).call();
+        assert rerun.getAccountsPosted() == 4 : rerun;
+
+        // a crash after the log write but before the balances are saved: the restart takes them
+        // from the log, and the resumed run finds every account posted
+        failing.failSaves = true;
+        BatchPostingJob.Result unsaved = logBank.postingJob(BatchPostingJob.Kind.FEE, new BigDecimal("1.00"), "2024-10")
+                .withChunking(4, 1).call();
+        failing.failSaves = false;
+        assert unsaved.getChunksFailed() == 1 : unsaved;
+        Bank restarted = new Bank(new FileDataStore(logDir), logger);
+        assert restarted.recoverFromLog() == 4;
+        BatchPostingJob.Result afterRestart = restarted.postingJob(BatchPostingJob.Kind.FEE, new BigDecimal("1.00"), "2024-10")
+                .withChunking(4, 1).call();
+        assert afterRestart.getAccountsPosted() == 0 : "Posted twice after a crash " + afterRestart;
+        for (Account a : restarted.snapshotAccounts()) {
+            assert a.getBalance().compareTo(new BigDecimal("109.00")) == 0 : a.getAccountNumber() + " has " + a.getBalance();
+        }
+
+        // an account numbered inside a finished chunk but created after it is still posted
+        Path gapDir = Files.createTempDirectory("atm-posting-gap");
+        FileDataStore gapStore = new FileDataStore(gapDir);
+        gapStore.saveAccounts(List.of(customer("200001"), customer("200003")));
+        Bank gapBank = new Bank(gapStore, logger);
+        gapBank.postingJob(BatchPostingJob.Kind.FEE, new BigDecimal("1.00"), "2024-08").withChunking(2, 1).call();
+        List<Account> withNew = new java.util.ArrayList<>(gapBank.snapshotAccounts());
+        withNew.add(customer("200002"));
+        gapStore.saveAccounts(withNew);
+        gapBank = new Bank(gapStore, logger);
+        BatchPostingJob.Result gap = gapBank.postingJob(BatchPostingJob.Kind.FEE, new BigDecimal("1.00"), "2024-08")
+                .withChunking(2, 1).call();
+        assert gap.getAccountsPosted() == 1 : "New account in a finished range " + gap;
+        for (Account a : gapBank.snapshotAccounts()) {
+            assert a.getBalance().compareTo(new BigDecimal("9.00")) == 0 : a.getAccountNumber() + " has " + a.getBalance();
+        }
+
+        System.out.println("All batch posting tests passed");
+    }
+
+    private static Account customer(String accountNumber) {
+        return new Account(accountNumber, "Customer" + accountNumber, Account.Role.USER, new BigDecimal("10.00"), "", "", true);
+    }
+
+    // Loses the "done" checkpoint entries while failDone is set, as a crash right after posting
+    // would; failAppends and failSaves make the log write or the account save fail instead.
+    private static final class CrashingStore implements DataStore {
+        private final DataStore inner;
+        volatile boolean failDone;
+        volatile boolean failAppends;
+        volatile boolean failSaves;
+
+        CrashingStore(DataStore inner) { this.inner = inner; }
+
+        @Override public List<Account> loadAccounts() throws IOException { return inner.loadAccounts(); }
+        @Override public void saveAccounts(List<Account> accounts) throws IOException {
+            if (failSaves) throw new IOException("simulated crash");
+            inner.saveAccounts(accounts);
+        }
+        @Override public void appendTransaction(Transaction tx) throws IOException {
+            if (failAppends) throw new IOException("simulated disk failure");
+            inner.appendTransaction(tx);
+        }
+        @Override public void appendTransactions(List<Transaction> txs) throws IOException {
+            if (failAppends) throw new IOException("simulated disk failure");
+            inner.appendTransactions(txs);
+        }
+        @Override public List<Transaction> loadLastNTransactions(String accountNumber, int n) throws IOException {
+            return inner.loadLastNTransactions(accountNumber, n);
+        }
+        @Override public void forEachTransaction(Consumer<Transaction> action) throws IOException { inner.forEachTransaction(action); }
+        @Override public List<StandingOrder> loadStandingOrders() throws IOException { return inner.loadStandingOrders(); }
+        @Override public void saveStandingOrders(List<StandingOrder> changed) throws IOException { inner.saveStandingOrders(changed); }
+        @Override public Set<String> loadCheckpoint(String jobId) throws IOException { return inner.loadCheckpoint(jobId); }
+        @Override public void appendCheckpoint(String jobId, String entry) throws IOException {
+            if (failDone && entry.startsWith("done")) throw new IOException("simulated crash");
+            inner.appendCheckpoint(jobId, entry);
+        }
+    }
+}
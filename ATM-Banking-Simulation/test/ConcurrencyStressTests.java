@@ -0,0 +1,303 @@
+/*
+ * ConcurrencyStressTests.java - Hammers Bank from many threads and checks money/lock safety.
+ * Run with: javac ... && java -ea -cp out ConcurrencyStressTests [threads] [opsPerThread]
+ *
+ * Scenarios: random mix, opposing transfers A->B / B->A, hot-account storm (plain, and striped
+ * while being switched between hot and normal), and transfers racing deleteAccount. After each
+ * run it checks that money is conserved, no balance is negative, the in-memory state equals
+ * accounts.csv, and replaying transactions.csv reproduces every balance (including each record's
+ * balanceAfter). A run that stops making progress fails with a thread dump. Throughput is printed per run.
+ */
+import atm.*;
+import atm.exceptions.InsufficientFundsException;
+import atm.exceptions.ValidationException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+public class ConcurrencyStressTests {
+    private static final long STALL_MILLIS = 15_000;
+
+    private static int threads = 8;
+    private static int opsPerThread = 200;
+
+    private interface Op {
+        void run(Bank bank, List<String> accounts, int worker, Random rnd, Ledger ledger) throws Exception;
+    }
+
+    // runs on one extra thread next to the workers
+    private interface Background {
+        void run(Bank bank, List<String> accounts, Random rnd) throws Exception;
+    }
+
+    // money that entered or left the bank through successful deposits/withdrawals
+    private static final class Ledger {
+        final LongAdder depositedCents = new LongAdder();
+        final LongAdder withdrawnCents = new LongAdder();
+        final LongAdder succeeded = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) threads = Integer.parseInt(args[0]);
+        if (args.length > 1) opsPerThread = Integer.parseInt(args[1]);
+        Logger logger = Logger.getLogger("atm-stress");
+        logger.setUseParentHandlers(false);
+
+        Map<String, Supplier<AccountTable>> tables = new LinkedHashMap<>();
+        tables.put("hash", HashAccountTable::new);
+        tables.put("compact", CompactAccountTable::new);
+        for (Map.Entry<String, Supplier<AccountTable>> table : tables.entrySet()) {
+            run("random-mix/" + table.getKey(), table.getValue(), 12, logger, ConcurrencyStressTests::randomOp, null);
+            run("opposing/" + table.getKey(), table.getValue(), 2, logger, ConcurrencyStressTests::opposingOp, null);
+            run("hot-account/" + table.getKey(), table.getValue(), 10, logger, ConcurrencyStressTests::hotOp, null);
+            run("hot-striped/" + table.getKey(), table.getValue(), 10, logger, ConcurrencyStressTests::hotOp,
+                    ConcurrencyStressTests::toggleHot);
+            run("delete-race/" + table.getKey(), table.getValue(), 10, logger, ConcurrencyStressTests::randomOp,
+                    ConcurrencyStressTests::deleteSome);
+        }
+        System.out.println("All concurrency stress tests passed");
+    }
+
+    // --- scenarios ---
+
+    private static void randomOp(Bank bank, List<String> accounts, int worker, Random rnd, Ledger ledger) throws Exception {
+        String a = pick(accounts, rnd);
+        BigDecimal amt = amount(rnd, 5000);
+        switch (rnd.nextInt(4)) {
+            case 0 -> deposit(bank, a, amt, ledger);
+            case 1 -> withdraw(bank, a, amt, ledger);
+            default -> bank.transfer(a, pickOther(accounts, a, rnd), amt);
+        }
+    }
+
+    // even workers mostly send A->B, odd ones mostly B->A, the same way on every run
+    private static void opposingOp(Bank bank, List<String> accounts, int worker, Random rnd, Ledger ledger) throws Exception {
+        boolean forward = worker % 2 == 0 ? rnd.nextInt(4) != 0 : rnd.nextInt(4) == 0;
+        String a = accounts.get(0), b = accounts.get(1);
+        if (forward) bank.transfer(a, b, amount(rnd, 2000));
+        else bank.transfer(b, a, amount(rnd, 2000));
+    }
+
+    private static void hotOp(Bank bank, List<String> accounts, int worker, Random rnd, Ledger ledger) throws Exception {
+        String hot = accounts.get(0);
+        String other = pickOther(accounts, hot, rnd);
+        int r = rnd.nextInt(10);
+        if (r < 6) bank.transfer(other, hot, amount(rnd, 1000));
+        else if (r < 8) bank.transfer(hot, other, amount(rnd, 3000));
+        else if (r < 9) deposit(bank, hot, amount(rnd, 1000), ledger);
+        else withdraw(bank, hot, amount(rnd, 3000), ledger);
+    }
+
+    // switches the hot account between striped and normal, ending striped
+    private static void toggleHot(Bank bank, List<String> accounts, Random rnd) throws Exception {
+        for (int i = 0; i < 21; i++) {
+            Thread.sleep(rnd.nextInt(10));
+            bank.setHot(accounts.get(0), i % 2 == 0);
+        }
+    }
+
+    private static void deleteSome(Bank bank, List<String> accounts, Random rnd) throws Exception {
+        int from = accounts.size() / 2;
+        for (String acc : accounts.subList(from, from + 3)) {
+            Thread.sleep(rnd.nextInt(50));
+            bank.deleteAccount(acc);
+        }
+    }
+
+    private static void deposit(Bank bank, String acc, BigDecimal amt, Ledger ledger) throws Exception {
+        bank.deposit(acc, amt);
+        ledger.depositedCents.add(cents(amt));
+    }
+
+    private static void withdraw(Bank bank, String acc, BigDecimal amt, Ledger ledger) throws Exception {
+        bank.withdraw(acc, amt);
+        ledger.withdrawnCents.add(cents(amt));
+    }
+
+    // --- harness ---
+
+    private static void run(String name, Supplier<AccountTable> table, int accountCount, Logger logger,
+                            Op op, Background background) throws Exception {
+        Path dir = Files.createTempDirectory("atm-stress");
+        Bank bank = new Bank(new FileDataStore(dir), logger, table.get());
+        List<String> accounts = new ArrayList<>();
+        for (int i = 0; i < accountCount; i++) {
+            accounts.add(bank.createAccount("Stress" + i, Account.Role.USER, new BigDecimal("1000.00"), "0000").getAccountNumber());
+        }
+        long initialCents = totalCents(bank.snapshotAccounts());
+
+        Ledger ledger = new Ledger();
+        AtomicLong progress = new AtomicLong();
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1, r -> {
+            Thread t = new Thread(r, "stress-" + UUID.randomUUID().toString().substring(0, 8));
+            t.setDaemon(true);
+            return t;
+        });
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            long seed = name.hashCode() * 31L + t;
+            pool.submit(() -> {
+                Random rnd = new Random(seed);
+                start.await();
+                for (int i = 0; i < opsPerThread; i++) {
+                    try {
+                        op.run(bank, accounts, worker, rnd, ledger);
+                        ledger.succeeded.increment();
+                    } catch (InsufficientFundsException | ValidationException expected) {
+                        ledger.rejected.increment();
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                    progress.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        if (background != null) {
+            pool.submit(() -> {
+                start.await();
+                try {
+                    background.run(bank, accounts, new Random(name.hashCode()));
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+                return null;
+            });
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        pool.shutdown();
+        awaitWithStallDetection(pool, progress, name);
+        double seconds = (System.nanoTime() - began) / 1e9;
+
+        if (!failures.isEmpty()) {
+            AssertionError err = new AssertionError(name + ": " + failures.size() + " unexpected errors");
+            failures.forEach(err::addSuppressed);
+            throw err;
+        }
+        // the hot account of a striped run ends striped, so verify also covers its persisted form
+        String stripedAccount = name.startsWith("hot-striped") ? accounts.get(0) : null;
+        assert stripedAccount == null || bank.isHot(stripedAccount) : name + ": account not left hot";
+        verify(name, bank, dir, initialCents, ledger);
+        long ops = progress.get();
+        System.out.printf("%-20s %6d ops in %6.2fs = %8.0f ops/s (ok=%d rejected=%d)%n",
+                name, ops, seconds, ops / seconds, ledger.succeeded.sum(), ledger.rejected.sum());
+    }
+
+    private static void awaitWithStallDetection(ExecutorService pool, AtomicLong progress, String name)
+            throws InterruptedException {
+        long lastProgress = -1;
+        long lastChange = System.currentTimeMillis();
+        while (!pool.awaitTermination(200, TimeUnit.MILLISECONDS)) {
+            long now = System.currentTimeMillis();
+            long p = progress.get();
+            if (p != lastProgress) {
+                lastProgress = p;
+                lastChange = now;
+            } else if (now - lastChange > STALL_MILLIS) {
+                throw new AssertionError(name + ": no progress for " + STALL_MILLIS + "ms\n" + threadDump());
+            }
+        }
+    }
+
+    private static String threadDump() {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        StringBuilder sb = new StringBuilder();
+        long[] deadlocked = mx.findDeadlockedThreads();
+        sb.append(deadlocked == null ? "No deadlock cycle detected (stall)\n" : "DEADLOCK between " + deadlocked.length + " threads\n");
+        for (ThreadInfo info : mx.dumpAllThreads(true, true)) {
+            if (info.getThreadName().startsWith("stress-")) sb.append(info);
+        }
+        return sb.toString();
+    }
+
+    // --- invariants ---
+
+    private static void verify(String name, Bank bank, Path dir, long initialCents, Ledger ledger) throws Exception {
+        List<Account> memory = bank.snapshotAccounts();
+
+        // conservation and no overdraft
+        long expected = initialCents + ledger.depositedCents.sum() - ledger.withdrawnCents.sum();
+        assert totalCents(memory) == expected : name + ": money not conserved, total " + totalCents(memory) + " != " + expected;
+        for (Account a : memory) {
+            assert a.getBalance().signum() >= 0 : name + ": negative balance on " + a.getAccountNumber();
+        }
+
+        // persisted accounts agree with memory
+        Map<String, BigDecimal> persisted = new HashMap<>();
+        for (Account a : new FileDataStore(dir).loadAccounts()) persisted.put(a.getAccountNumber(), a.getBalance());
+        for (Account a : memory) {
+            BigDecimal p = persisted.get(a.getAccountNumber());
+            assert p != null && p.compareTo(a.getBalance()) == 0
+                    : name + ": accounts.csv has " + p + " for " + a.getAccountNumber() + ", memory " + a.getBalance();
+        }
+
+        // transaction log replays to the same balances, record by record
+        FileDataStore store = new FileDataStore(dir);
+        for (Account a : memory) {
+            long balance = 0;
+            boolean deleted = false;
+            for (Transaction tx : store.loadLastNTransactions(a.getAccountNumber(), Integer.MAX_VALUE)) {
+                long amt = tx.getAmount() == null ? 0 : cents(tx.getAmount());
+                switch (tx.getType()) {
+                    case ACCOUNT_CREATE -> balance = cents(tx.getBalanceAfter());
+                    case DEPOSIT, TRANSFER_IN, INTEREST -> balance += amt;
+                    case WITHDRAW, TRANSFER_OUT, FEE -> balance -= amt;
+                    case ACCOUNT_DELETE -> deleted = true;
+                    default -> { }
+                }
+                if (deleted && (tx.getType() == TransactionType.TRANSFER_IN || tx.getType() == TransactionType.TRANSFER_OUT)) {
+                    throw new AssertionError(name + ": transfer recorded after " + a.getAccountNumber() + " was deactivated");
+                }
+                if (tx.getBalanceAfter() != null && tx.getType() != TransactionType.LOGIN) {
+                    assert cents(tx.getBalanceAfter()) == balance
+                            : name + ": balanceAfter " + tx.getBalanceAfter() + " breaks the chain for " + a.getAccountNumber();
+                }
+            }
+            assert balance == cents(a.getBalance())
+                    : name + ": log replays to " + balance + " for " + a.getAccountNumber() + ", memory " + a.getBalance();
+        }
+    }
+
+    // --- helpers ---
+
+    private static long totalCents(List<Account> accounts) {
+        long sum = 0;
+        for (Account a : accounts) sum += cents(a.getBalance());
+        return sum;
+    }
+
+    private static long cents(BigDecimal v) {
+        return Account.normalize(v).unscaledValue().longValueExact();
+    }
+
+    private static BigDecimal amount(Random rnd, int maxCents) {
+        return BigDecimal.valueOf(1 + rnd.nextInt(maxCents), 2);
+    }
+
+    private static String pick(List<String> accounts, Random rnd) {
+        return accounts.get(rnd.nextInt(accounts.size()));
+    }
+
+    private static String pickOther(List<String> accounts, String not, Random rnd) {
+        String s;
+        do {
+            s = pick(accounts, rnd);
+        } while (s.equals(not));
+        return s;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * HotAccountTests.java - Striped hot accounts: borrowing debits, folding, detection, scaling.
+ * Run with: javac ... && java -ea -cp out HotAccountTests [millisPerBenchmarkCell]
+ *
+ * Ends with a benchmark of credit throughput on one account by thread count, for the plain
+ * fair account lock versus StripedBalance, and end to end through Bank.deposit, with a no-op
+ * store and with FileDataStore. Every deposit still saves accounts.csv under one lock; on a hot
+ * account the saves are group-committed, so that is where the file columns part ways.
+ */
+import atm.*;
+import atm.exceptions.InsufficientFundsException;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class HotAccountTests {
+    private static long cellMillis = 300;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) cellMillis = Long.parseLong(args[0]);
+        Logger logger = Logger.getLogger("atm-hot");
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.WARNING);
+
+        Bank bank = new Bank(new FileDataStore(Files.createTempDirectory("atm-hot")), logger);
+        String merchant = bank.createAccount("Merchant", Account.Role.USER, new BigDecimal("5.00"), "0000").getAccountNumber();
+        String payer = bank.createAccount("Payer", Account.Role.USER, new BigDecimal("100.00"), "0000").getAccountNumber();
+
+        // credits from several threads land in different stripes; a debit borrows across them
+        bank.setHot(merchant, true);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> credits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) credits.add(pool.submit(() -> {
+            bank.deposit(merchant, new BigDecimal("10.00"));
+            return null;
+        }));
+        for (Future<?> f : credits) f.get();
+        bank.transfer(payer, merchant, new BigDecimal("2.50"));
+        assert bank.balance(merchant).compareTo(new BigDecimal("47.50")) == 0 : "Hot balance " + bank.balance(merchant);
+        bank.withdraw(merchant, new BigDecimal("37.00"));
+        assert bank.balance(merchant).compareTo(new BigDecimal("10.50")) == 0 : "After borrowing debit " + bank.balance(merchant);
+        boolean refused = false;
+        try {
+            bank.transfer(merchant, payer, new BigDecimal("10.51"));
+        } catch (InsufficientFundsException expected) {
+            refused = true;
+        }
+        assert refused : "Overdraft allowed on a hot account";
+        assert bank.snapshotAccounts().stream().anyMatch(a -> a.getAccountNumber().equals(merchant)
+                && a.getBalance().compareTo(new BigDecimal("10.50")) == 0) : "Snapshot misses striped balance";
+
+        // back to normal keeps the money
+        bank.setHot(merchant, false);
+        assert !bank.isHot(merchant) && bank.balance(merchant).compareTo(new BigDecimal("10.50")) == 0 : "Fold lost money";
+        pool.shutdown();
+
+        // the detector marks an account whose credits keep finding the lock taken
+        try (HotAccountDetector detector = new HotAccountDetector(bank, 100, 3, logger)) {
+            bank.setHotAccountDetector(detector);
+            AtomicBoolean stop = new AtomicBoolean();
+            List<Thread> payers = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                Thread t = new Thread(() -> {
+                    while (!stop.get()) {
+                        try {
+                            bank.deposit(merchant, new BigDecimal("0.01"));
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+                t.start();
+                payers.add(t);
+            }
+            boolean detected = waitFor(() -> bank.isHot(merchant), 5000);
+            stop.set(true);
+            for (Thread t : payers) t.join();
+            assert detected : "Contended account was not detected";
+            assert detector.markedAccounts().equals(Set.of(merchant));
+            assert waitFor(() -> !bank.isHot(merchant), 5000) : "Idle account did not cool down";
+            bank.setHotAccountDetector(null);
+        }
+
+        // a low threshold still cools down an account that keeps getting the odd credit
+        try (HotAccountDetector detector = new HotAccountDetector(bank, 100, 3, 8, logger)) {
+            bank.setHotAccountDetector(detector);
+            AtomicBoolean stop = new AtomicBoolean();
+            List<Thread> payers = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                int id = i;
+                Thread t = new Thread(() -> {
+                    try {
+                        while (!stop.get()) {
+                            bank.deposit(merchant, new BigDecimal("0.01"));
+                            // once detected, only the first payer goes on: about three credits a window
+                            if (bank.isHot(merchant) && id > 0) return;
+                            if (bank.isHot(merchant)) Thread.sleep(30);
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                t.start();
+                payers.add(t);
+            }
+            boolean detected = waitFor(() -> bank.isHot(merchant), 5000);
+            boolean cooled = detected && waitFor(() -> !bank.isHot(merchant), 5000);
+            stop.set(true);
+            for (Thread t : payers) t.join();
+            assert detected : "Contended account was not detected";
+            assert cooled : "Account with a trickle of credits stayed hot";
+            bank.setHotAccountDetector(null);
+        }
+
+        // hot credits that queue up behind a slow account save share the next save
+        SlowSaveStore slow = new SlowSaveStore();
+        Bank slowBank = new Bank(slow, logger);
+        String shop = slowBank.createAccount("Shop", Account.Role.USER, BigDecimal.ONE, "0000").getAccountNumber();
+        slowBank.setHot(shop, true);
+        slow.saves.set(0);
+        slow.hold = new CountDownLatch(1);
+        List<Thread> waiting = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    slowBank.deposit(shop, new BigDecimal("1.00"));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            t.start();
+            waiting.add(t);
+        }
+        // one save is held; the other four wait for the persist lock
+        assert waitFor(() -> slow.saves.get() == 1 && waiting.stream().filter(t -> t.getState() == Thread.State.BLOCKED).count() == 4, 5000)
+                : "Credits did not queue up";
+        Thread.sleep(50);
+        slow.hold.countDown();
+        for (Thread t : waiting) t.join();
+        assert slow.saves.get() == 2 : "Account saves: " + slow.saves.get();
+        assert slow.lastSaved.get(0).getBalance().compareTo(new BigDecimal("6.00")) == 0 : "Last save missed a credit";
+
+        System.out.println("All hot account tests passed");
+
+        benchmark(logger);
+    }
+
+    // --- scaling benchmark ---
+
+    private static void benchmark(Logger logger) throws Exception {
+        int max = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+        System.out.printf("Credits/s on one account (%d cores, %d ms per cell)%n",
+                Runtime.getRuntime().availableProcessors(), cellMillis);
+        System.out.printf("%8s %14s %14s %14s %14s %14s %14s%n", "threads", "lock", "striped", "bank plain", "bank hot",
+                "file plain", "file hot");
+        for (int threads = 1; threads <= max; threads *= 2) {
+            ReentrantLock lock = new ReentrantLock(true);   // as handed out by LockManager
+            Account plain = new Account("1", "Plain", Account.Role.USER, BigDecimal.ZERO, "", "", true);
+            StripedBalance striped = new StripedBalance(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+            BigDecimal cent = new BigDecimal("0.01");
+
+            double locked = rate(threads, n -> {
+                lock.lock();
+                try {
+                    plain.deposit(cent);
+                } finally {
+                    lock.unlock();
+                }
+            });
+            double stripedRate = rate(threads, n -> striped.credit(Account.normalize(cent).unscaledValue().longValueExact()));
+            double bankPlain = rate(threads, bankDeposit(logger, new NullStore(), false));
+            double bankHot = rate(threads, bankDeposit(logger, new NullStore(), true));
+            double filePlain = rate(threads, bankDeposit(logger, new FileDataStore(Files.createTempDirectory("atm-hot-bench")), false));
+            double fileHot = rate(threads, bankDeposit(logger, new FileDataStore(Files.createTempDirectory("atm-hot-bench")), true));
+            System.out.printf("%8d %14.0f %14.0f %14.0f %14.0f %14.0f %14.0f%n", threads, locked, stripedRate, bankPlain, bankHot,
+                    filePlain, fileHot);
+        }
+    }
+
+    private static Consumer<Integer> bankDeposit(Logger logger, DataStore store, boolean hot) throws Exception {
+        Bank bank = new Bank(store, logger);
+        String acc = bank.createAccount("Bench", Account.Role.USER, BigDecimal.ONE, "0000").getAccountNumber();
+        for (int i = 0; i < 200; i++) bank.createAccount("Other" + i, Account.Role.USER, BigDecimal.ONE, "0000");
+        if (hot) bank.setHot(acc, true);
+        BigDecimal cent = new BigDecimal("0.01");
+        return n -> {
+            try {
+                bank.deposit(acc, cent);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+
+    private static double rate(int threads, Consumer<Integer> op) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch ready = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread w = new Thread(() -> {
+                ready.countDown();
+                long n = 0;
+                while (!stop.get()) {
+                    op.accept(id);
+                    n++;
+                }
+                ops.add(n);
+            });
+            w.start();
+            workers.add(w);
+        }
+        ready.await();
+        long began = System.nanoTime();
+        Thread.sleep(cellMillis);
+        stop.set(true);
+        for (Thread w : workers) w.join();
+        return ops.sum() / ((System.nanoTime() - began) / 1e9);
+    }
+
+    private static boolean waitFor(java.util.function.BooleanSupplier condition, long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) return false;
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    // Keeps nothing, so the benchmark measures the Bank's own locking.
+    private static class NullStore implements DataStore {
+        @Override public List<Account> loadAccounts() { return new ArrayList<>(); }
+        @Override public void saveAccounts(List<Account> accounts) { }
+        @Override public void appendTransaction(Transaction tx) { }
+        @Override public void appendTransactions(List<Transaction> txs) { }
+        @Override public List<Transaction> loadLastNTransactions(String accountNumber, int n) { return new ArrayList<>(); }
+        @Override public void forEachTransaction(Consumer<Transaction> action) { }
+        @Override public Set<String> loadCheckpoint(String jobId) { return Set.of(); }
+        @Override public void appendCheckpoint(String jobId, String entry) { }
+        @Override public List<StandingOrder> loadStandingOrders() { return new ArrayList<>(); }
+        @Override public void saveStandingOrders(List<StandingOrder> changed) { }
+    }
+
+    // Counts account saves and keeps the last one; while hold is closed, a save waits for it.
+    private static final class SlowSaveStore extends NullStore {
+        final java.util.concurrent.atomic.AtomicInteger saves = new java.util.concurrent.atomic.AtomicInteger();
+        volatile CountDownLatch hold = new CountDownLatch(0);
+        volatile List<Account> lastSaved;
+
+        @Override public void saveAccounts(List<Account> accounts) {
+            saves.incrementAndGet();
+            try {
+                hold.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lastSaved = accounts;
+        }
+    }
+}
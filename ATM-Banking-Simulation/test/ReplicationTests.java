@@ -0,0 +1,120 @@
+/*
+ * ReplicationTests.java - Primary in this JVM, follower in a second JVM on the same machine.
+ * Run with: javac ... && java -ea -cp out ReplicationTests
+ * (the test starts "java -cp out ReplicationTests follower <port> <dir>" itself)
+ */
+import atm.*;
+import atm.exceptions.ValidationException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class ReplicationTests {
+    public static void main(String[] args) throws Exception {
+        Logger logger = Logger.getLogger("atm-tests");
+        logger.setUseParentHandlers(false);
+        if (args.length > 0 && args[0].equals("follower")) {
+            runFollower(Integer.parseInt(args[1]), Path.of(args[2]), logger);
+            return;
+        }
+
+        Path primaryDir = Files.createTempDirectory("atm-primary");
+        Path followerDir = Files.createTempDirectory("atm-follower");
+        Files.copy(Path.of("data", "accounts.csv"), primaryDir.resolve("accounts.csv"));
+        FileDataStore fileStore = new FileDataStore(primaryDir);
+        BigDecimal bobOnPrimary;
+        try (ReplicationPrimary primary = new ReplicationPrimary(0, ReplicationPrimary.AckMode.ONE_FOLLOWER, 5000,
+                10_000, fileStore, logger)) {
+            Bank bank = new Bank(new ReplicatingDataStore(fileStore, primary), logger);
+            // history written before any follower exists must reach it through the snapshot
+            bank.deposit("100001", new BigDecimal("7.00"));
+            bank.withdraw("100003", new BigDecimal("2.00"));
+
+            // first follower run: snapshot, then synchronously acknowledged writes
+            Process follower = startFollower(primary.getPort(), followerDir);
+            waitFor(() -> Files.exists(followerDir.resolve("replication.pos")), "initial snapshot");
+            bank.deposit("100001", new BigDecimal("25.00"));
+            bank.transfer("100001", "100002", new BigDecimal("10.00"));
+            bank.createAccount("Dana", Account.Role.USER, new BigDecimal("40.00"), "4444");
+            assert primary.getAckTimeouts() == 0 : "Follower did not ack synchronously";
+            assertInSync(primaryDir, followerDir, primary.getHeadSeq());
+
+            // follower goes away; the primary keeps working
+            follower.destroyForcibly().waitFor();
+            bank.withdraw("100002", new BigDecimal("5.00"));
+            bank.deposit("100003", new BigDecimal("1.50"));
+
+            // restart catches up from the persisted position without duplicating history
+            follower = startFollower(primary.getPort(), followerDir);
+            waitFor(() -> position(followerDir) == primary.getHeadSeq(), "catch-up after restart");
+            assertInSync(primaryDir, followerDir, primary.getHeadSeq());
+            follower.destroyForcibly().waitFor();
+
+            // a follower that joins late, with an empty directory, gets the whole history
+            Path lateDir = Files.createTempDirectory("atm-late-follower");
+            follower = startFollower(primary.getPort(), lateDir);
+            waitFor(() -> position(lateDir) == primary.getHeadSeq(), "late follower snapshot");
+            assertInSync(primaryDir, lateDir, primary.getHeadSeq());
+            follower.destroyForcibly().waitFor();
+            bobOnPrimary = bank.balance("100002");
+        }
+
+        // the replica serves reads but refuses writes
+        ATM replica = new ReadOnlyATM(new Bank(new FileDataStore(followerDir), logger));
+        User bob = replica.login("100002", "2222");
+        assert replica.balance(bob).equals(bobOnPrimary.toPlainString()) : "Replica balance " + replica.balance(bob);
+        assert replica.lastN(bob, 10).size() == 2 : "Replica history";
+        try {
+            replica.deposit(bob, new BigDecimal("1.00"));
+            assert false : "Replica accepted a write";
+        } catch (ValidationException expected) { }
+
+        System.out.println("All replication tests passed");
+    }
+
+    private static void runFollower(int port, Path dir, Logger logger) throws Exception {
+        FileDataStore store = new FileDataStore(dir);
+        Bank bank = new Bank(store, logger);
+        new ReplicationFollower(bank, store, port, dir.resolve("replication.pos"), logger).start();
+        Thread.sleep(Long.MAX_VALUE);   // killed by the parent
+    }
+
+    private static Process startFollower(int port, Path dir) throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "ReplicationTests", "follower", String.valueOf(port), dir.toString())
+                .inheritIO().start();
+    }
+
+    private static void assertInSync(Path primaryDir, Path followerDir, long head) throws Exception {
+        assert position(followerDir) == head : "Follower position " + position(followerDir) + " != " + head;
+        List<String> pa = Files.readAllLines(primaryDir.resolve("accounts.csv"));
+        List<String> fa = Files.readAllLines(followerDir.resolve("accounts.csv"));
+        assert new java.util.HashSet<>(pa).equals(new java.util.HashSet<>(fa)) : "accounts.csv differs";
+        List<String> pt = Files.readAllLines(primaryDir.resolve("transactions.csv"));
+        List<String> ft = Files.readAllLines(followerDir.resolve("transactions.csv"));
+        assert pt.equals(ft) : "transactions.csv differs:\n" + pt + "\n" + ft;
+    }
+
+    private static long position(Path dir) {
+        try {
+            return Long.parseLong(Files.readString(dir.resolve("replication.pos"), StandardCharsets.UTF_8).trim().split(" ")[1]);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private interface Check { boolean ok() throws Exception; }
+
+    private static void waitFor(Check check, String what) throws Exception {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!check.ok()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("Timed out waiting for " + what);
+            Thread.sleep(20);
+        }
+    }
+}
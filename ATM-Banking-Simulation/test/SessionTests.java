@@ -0,0 +1,116 @@
+/*
+ * SessionTests.java - Timing-wheel expiry, session limits and LOGIN audit policies.
+ * Run with: javac ... && java -ea -cp out SessionTests
+ */
+import atm.*;
+import atm.exceptions.AuthenticationException;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class SessionTests {
+    public static void main(String[] args) throws Exception {
+        Logger logger = Logger.getLogger("atm-sessions");
+        logger.setUseParentHandlers(false);
+
+        // wheel delivers due items only, including ones a whole rotation ahead
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 0);
+        wheel.schedule("soon", 25);
+        wheel.schedule("later", 95);
+        List<String> due = new ArrayList<>();
+        wheel.advance(30, due::add);
+        assert due.equals(List.of("soon")) : "Due at 30: " + due;
+        wheel.advance(100, due::add);
+        assert due.equals(List.of("soon", "later")) : "Due at 100: " + due;
+
+        Path sessionDir = Files.createTempDirectory("atm-sessions");
+        Bank bank = new Bank(new FileDataStore(sessionDir), logger);
+        String sessAcc = bank.createAccount("Sess", Account.Role.USER, new BigDecimal("10.00"), "1111").getAccountNumber();
+        User user = bank.authenticate(sessAcc, "1111");
+        try (SessionManager sessions = new SessionManager(300, 20, 64, 2, logger)) {
+            String idle = sessions.open(user);
+            String busy = sessions.open(user);
+            assert rejected(() -> sessions.open(user)) : "Per-account limit not enforced";
+            // a login whose session is refused is not audited as a successful one
+            assert rejected(() -> new ATM(bank).login(sessAcc, "1111", sessions::open)) : "Session limit bypassed at login";
+            assert loginRecords(sessionDir, sessAcc).size() == 1 : "Refused login was audited";
+
+            // keep one session active past the idle timeout, leave the other alone
+            for (int i = 0; i < 10; i++) {
+                Thread.sleep(60);
+                assert sessions.resolve(busy) == user;
+            }
+            assert sessions.activeSessions() == 1 : "Idle session not expired by the ticker";
+            assert rejected(() -> sessions.resolve(idle)) : "Expired token still resolves";
+            assert sessions.expiredCount() == 1;
+
+            sessions.close(busy);
+            assert sessions.activeSessions(user.getAccount().getAccountNumber()) == 0 : "Logout did not free the slot";
+            assert rejected(() -> sessions.resolve(busy)) : "Closed token still resolves";
+        }
+
+        // coalesced: 5 logins become one record; sampled: 1 of every 3
+        checkAudit(logger, (dir, audited) -> LoginAudit.coalesced(new FileDataStore(dir), 60_000, audited::balance, logger), 5, 1,
+                "Successful login x5");
+        checkAudit(logger, (dir, audited) -> LoginAudit.sampled(new FileDataStore(dir), 3, logger), 7, 3, null);
+
+        System.out.println("All session tests passed");
+    }
+
+    private interface AuditFactory {
+        LoginAudit create(Path dir, Bank bank) throws Exception;
+    }
+
+    private static void checkAudit(Logger logger, AuditFactory factory, int logins, int expectedRecords,
+                                   String expectedDetails) throws Exception {
+        Path dir = Files.createTempDirectory("atm-audit");
+        Bank bank = new Bank(new FileDataStore(dir), logger);
+        String acc = bank.createAccount("Audit", Account.Role.USER, new BigDecimal("1.00"), "2222").getAccountNumber();
+        try (LoginAudit audit = factory.create(dir, bank)) {
+            bank.setLoginAudit(audit);
+            for (int i = 0; i < logins; i++) bank.authenticate(acc, "2222");
+            bank.deposit(acc, new BigDecimal("1.00"));
+            audit.flush();   // twice: the second one has nothing to write
+        }
+        // the log stays in time order, and each LOGIN record shows the balance of its moment
+        LocalDateTime previous = LocalDateTime.MIN;
+        BigDecimal current = null;
+        for (Transaction tx : new FileDataStore(dir).loadLastNTransactions(acc, 100)) {
+            assert !tx.getTimestamp().isBefore(previous) : "Out of order: " + tx;
+            previous = tx.getTimestamp();
+            if (tx.getType() != TransactionType.LOGIN) current = tx.getBalanceAfter();
+            else assert tx.getBalanceAfter().compareTo(current) == 0 : "Stale balance: " + tx;
+        }
+        List<Transaction> records = loginRecords(dir, acc);
+        assert records.size() == expectedRecords : "Expected " + expectedRecords + " LOGIN records, got " + records.size();
+        if (expectedDetails != null) {
+            assert records.get(0).getDetails().equals(expectedDetails) : "Details " + records.get(0).getDetails();
+        }
+    }
+
+    private static List<Transaction> loginRecords(Path dir, String acc) throws Exception {
+        List<Transaction> records = new ArrayList<>();
+        for (Transaction tx : new FileDataStore(dir).loadLastNTransactions(acc, 100)) {
+            if (tx.getType() == TransactionType.LOGIN) records.add(tx);
+        }
+        return records;
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static boolean rejected(Action a) throws Exception {
+        try {
+            a.run();
+            return false;
+        } catch (AuthenticationException expected) {
+            return true;
+        }
+    }
+}
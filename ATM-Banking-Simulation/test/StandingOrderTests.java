@@ -0,0 +1,239 @@
+/*
+ * StandingOrderTests.java - Scheduling, retries, batching and restart safety of standing orders.
+ * Run with: javac ... && java -ea -cp out StandingOrderTests
+ */
+import atm.*;
+import atm.exceptions.ValidationException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+public class StandingOrderTests {
+    public static void main(String[] args) throws Exception {
+        Logger logger = Logger.getLogger("atm-standing");
+        logger.setUseParentHandlers(false);
+        Path dir = Files.createTempDirectory("atm-standing");
+        CountingStore store = new CountingStore(new FileDataStore(dir));
+        Bank bank = new Bank(store, logger);
+        String payer = bank.createAccount("Payer", Account.Role.USER, new BigDecimal("1000.00"), "0000").getAccountNumber();
+        String payee = bank.createAccount("Payee", Account.Role.USER, new BigDecimal("1.00"), "0000").getAccountNumber();
+        String poor = bank.createAccount("Poor", Account.Role.USER, new BigDecimal("10.00"), "0000").getAccountNumber();
+        StandingOrderEngine engine = new StandingOrderEngine(bank, store, logger, 5, 2, Duration.ofMinutes(5));
+
+        // a monthly order from the 31st falls on the last day of February, then the 31st again
+        LocalDateTime jan31 = LocalDateTime.of(2024, 1, 31, 9, 0);
+        StandingOrder rent = engine.create(payer, payee, new BigDecimal("100.00"), StandingOrder.Frequency.MONTHLY, jan31);
+        assert engine.runDue(jan31.minusMinutes(1)).getBatches() == 0 : "Ran before it was due";
+        assert engine.runDue(jan31).getPaid() == 1;
+        assert engine.list(payer).get(0).getNextRun().equals(LocalDateTime.of(2024, 2, 29, 9, 0)) : engine.list(payer);
+        assert engine.runDue(LocalDateTime.of(2024, 2, 29, 9, 0)).getPaid() == 1;
+        assert engine.list(payer).get(0).getNextRun().equals(LocalDateTime.of(2024, 3, 31, 9, 0)) : engine.list(payer);
+        assert bank.balance(payee).compareTo(new BigDecimal("201.00")) == 0 : "Payee got " + bank.balance(payee);
+        assert bank.lastN(payer, 1).get(0).getDetails().startsWith("Standing order " + rent.getId() + " #2 to ");
+        engine.cancel(null, rent.getId());   // admins may cancel any account's order
+
+        // bad orders are refused up front
+        assert refused(() -> engine.create(payer, payer, BigDecimal.ONE, StandingOrder.Frequency.DAILY, jan31));
+        assert refused(() -> engine.create(payer, "nope", BigDecimal.ONE, StandingOrder.Frequency.DAILY, jan31));
+        assert refused(() -> engine.create(payer, payee, new BigDecimal("0.001"), StandingOrder.Frequency.DAILY, jan31));
+
+        // insufficient funds: retried after 5 and 10 minutes, then this occurrence is skipped
+        LocalDateTime day = LocalDateTime.of(2024, 5, 1, 8, 0);
+        StandingOrder daily = engine.create(poor, payee, new BigDecimal("50.00"), StandingOrder.Frequency.DAILY, day);
+        assert engine.runDue(day).getRetried() == 1;
+        assert current(engine, poor).getNextRun().equals(day.plusMinutes(5)) : current(engine, poor);
+        assert engine.runDue(day.plusMinutes(4)).getBatches() == 0 : "Retried before the backoff";
+        assert engine.runDue(day.plusMinutes(5)).getRetried() == 1;
+        assert current(engine, poor).getNextRun().equals(day.plusMinutes(15)) : current(engine, poor);
+        engine.runDue(day.plusMinutes(15));
+        StandingOrder skipped = current(engine, poor);
+        assert skipped.getRuns() == 1 && skipped.getAttempt() == 0 && skipped.getNextRun().equals(day.plusDays(1)) : skipped;
+        bank.deposit(poor, new BigDecimal("40.00"));
+        assert engine.runDue(day.plusDays(1)).getPaid() == 1;
+        assert bank.balance(poor).signum() == 0 : "Poor has " + bank.balance(poor);
+
+        // only the owner can cancel; a cancelled order never runs again
+        assert refused(() -> engine.cancel(payer, daily.getId()));
+        engine.cancel(poor, daily.getId());
+        assert engine.list(poor).isEmpty();
+        assert refused(() -> engine.cancel(poor, daily.getId()));
+
+        // twelve due orders in batches of five: three account saves, not twelve
+        LocalDateTime noon = LocalDateTime.of(2024, 6, 1, 12, 0);
+        for (int i = 0; i < 12; i++) engine.create(payer, payee, new BigDecimal("1.00"), StandingOrder.Frequency.ONCE, noon);
+        store.accountSaves = 0;
+        StandingOrderEngine.RunResult run = engine.runDue(noon);
+        assert run.getBatches() == 3 && run.getPaid() == 12 : run;
+        assert store.accountSaves == 3 : "Account saves: " + store.accountSaves;
+        assert engine.list(null).isEmpty() : "One-off orders still active: " + engine.list(null);
+
+        // a batch whose records cannot be written is undone and stays queued in the running engine
+        LocalDateTime one = noon.plusHours(1);
+        for (int i = 0; i < 7; i++) engine.create(payer, payee, new BigDecimal("1.00"), StandingOrder.Frequency.ONCE, one);
+        BigDecimal payeeBefore = bank.balance(payee);
+        store.failAppendsFor = payee;
+        assert throwsIO(() -> engine.runDue(one)) : "Log write failure not reported";
+        store.failAppendsFor = null;
+        assert bank.balance(payee).compareTo(payeeBefore) == 0 : "Failed batch left money moved";
+        assert engine.list(null).size() == 7 : "Orders lost after a failed batch: " + engine.list(null);
+        // the order book write of the first batch fails: the second batch never ran but is not lost
+        store.failOrderSaves = true;
+        assert throwsIO(() -> engine.runDue(one));
+        store.failOrderSaves = false;
+        assert engine.list(null).size() == 2 : engine.list(null);
+        run = engine.runDue(one);
+        assert run.getPaid() == 2 && engine.list(null).isEmpty() : run;
+        assert bank.balance(payee).compareTo(payeeBefore.add(new BigDecimal("7.00"))) == 0 : "Payee got " + bank.balance(payee);
+
+        // a hot payee whose log writes fail: the batch is paid once, and its records wait in the
+        // payee's journal
+        bank.setHot(payee, true);
+        LocalDateTime two = noon.plusHours(2);
+        for (int i = 0; i < 3; i++) engine.create(payer, payee, new BigDecimal("1.00"), StandingOrder.Frequency.ONCE, two);
+        payeeBefore = bank.balance(payee);
+        store.failAppendsFor = payee;
+        run = engine.runDue(two);
+        assert run.getPaid() == 3 && engine.list(null).isEmpty() : run;
+        assert engine.runDue(two).getBatches() == 0 : "Paid batch ran again";
+        store.failAppendsFor = null;
+        assert bank.balance(payee).compareTo(payeeBefore.add(new BigDecimal("3.00"))) == 0 : "Payee got " + bank.balance(payee);
+        bank.setHot(payee, false);   // writes the queued records
+        for (Transaction tx : bank.lastN(payee, 3)) {
+            assert tx.getDetails().startsWith("Standing order ") : "Queued record missing: " + tx;
+        }
+        assert bank.lastN(payee, 1).get(0).getBalanceAfter().compareTo(bank.balance(payee)) == 0;
+
+        // the order book survives a restart
+        StandingOrder weekly = engine.create(payer, payee, new BigDecimal("2.00"), StandingOrder.Frequency.WEEKLY, noon);
+        StandingOrderEngine reopened = new StandingOrderEngine(bank, new FileDataStore(dir), logger);
+        assert reopened.list(null).size() == 1 && reopened.list(null).get(0).toString().equals(weekly.toString()) : reopened.list(null);
+        engine.cancel(null, weekly.getId());
+
+        // a crash between paying a batch and recording it: the restart does not pay it again
+        StandingOrder once = engine.create(payer, payee, new BigDecimal("3.00"), StandingOrder.Frequency.ONCE, noon);
+        BigDecimal before = bank.balance(payee);
+        store.failOrderSaves = true;
+        assert throwsIO(() -> engine.runDue(noon)) && bank.balance(payee).compareTo(before.add(new BigDecimal("3.00"))) == 0;
+        store.failOrderSaves = false;
+        StandingOrderEngine restarted = new StandingOrderEngine(bank, new FileDataStore(dir), logger);
+        assert restarted.list(null).isEmpty() : "Paid order still due: " + restarted.list(null);
+        assert restarted.runDue(noon).getBatches() == 0;
+        assert bank.balance(payee).compareTo(before.add(new BigDecimal("3.00"))) == 0 : "Paid twice";
+        assert new StandingOrderEngine(bank, new FileDataStore(dir), logger).list(null).isEmpty() : "Reconcile not recorded";
+        StandingOrder next = restarted.create(payer, payee, BigDecimal.ONE, StandingOrder.Frequency.ONCE, noon);
+        assert next.getId() > once.getId() : "Id reused after restart";
+        restarted.cancel(null, next.getId());
+
+        // compaction drops finished orders but not the id high-water mark, so an occurrence tag
+        // such as "Standing order 1 #1" is never reused and mistaken for an earlier payment
+        long highest = 0;
+        for (int i = 0; i < 70; i++) {
+            StandingOrder o = restarted.create(payer, payee, BigDecimal.ONE, StandingOrder.Frequency.ONCE, noon);
+            restarted.cancel(null, o.getId());
+            highest = o.getId();
+        }
+        new StandingOrderEngine(bank, new FileDataStore(dir), logger);   // loading compacts the book
+        assert Files.readAllLines(dir.resolve("standing_orders.csv")).size() <= 2 : "Book not compacted";
+        StandingOrderEngine compacted = new StandingOrderEngine(bank, new FileDataStore(dir), logger);
+        StandingOrder fresh = compacted.create(payer, payee, new BigDecimal("4.00"), StandingOrder.Frequency.ONCE, noon);
+        assert fresh.getId() > highest : "Id " + fresh.getId() + " reused after compaction";
+        before = bank.balance(payee);
+        StandingOrderEngine overdue = new StandingOrderEngine(bank, new FileDataStore(dir), logger);
+        assert overdue.list(null).size() == 1 : "New order taken for paid: " + overdue.list(null);
+        assert overdue.runDue(noon).getPaid() == 1;
+        assert bank.balance(payee).compareTo(before.add(new BigDecimal("4.00"))) == 0;
+
+        // a crash after the log write but before the account save: the restart takes the balances
+        // from the log, and the order, found in the log, is not paid again
+        StandingOrderEngine crashing = new StandingOrderEngine(bank, store, logger);
+        crashing.create(payer, payee, new BigDecimal("5.00"), StandingOrder.Frequency.ONCE, noon);
+        before = bank.balance(payee);
+        store.failAccountSaves = true;
+        store.failOrderSaves = true;
+        assert throwsIO(() -> crashing.runDue(noon));
+        store.failAccountSaves = false;
+        store.failOrderSaves = false;
+        Bank recovered = new Bank(new FileDataStore(dir), logger);
+        assert recovered.balance(payee).compareTo(before) == 0 : "Account save was not skipped";
+        assert recovered.recoverFromLog() == 2;
+        assert recovered.balance(payee).compareTo(before.add(new BigDecimal("5.00"))) == 0 : "Payee has " + recovered.balance(payee);
+        assert recovered.balance(payer).compareTo(bank.balance(payer)) == 0 : "Payer has " + recovered.balance(payer);
+        StandingOrderEngine resumed = new StandingOrderEngine(recovered, new FileDataStore(dir), logger);
+        assert resumed.list(null).isEmpty() && resumed.runDue(noon).getBatches() == 0 : "Paid again: " + resumed.list(null);
+        assert recovered.recoverFromLog() == 0;
+
+        System.out.println("All standing order tests passed");
+    }
+
+    private static StandingOrder current(StandingOrderEngine engine, String account) {
+        return engine.list(account).get(0);
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static boolean throwsIO(Action action) throws Exception {
+        try {
+            action.run();
+            return false;
+        } catch (IOException expected) {
+            return true;
+        }
+    }
+
+    private static boolean refused(Action action) throws Exception {
+        try {
+            action.run();
+            return false;
+        } catch (ValidationException expected) {
+            return true;
+        }
+    }
+
+    // Counts account saves and can make account or order book writes fail, as a crash would.
+    private static final class CountingStore implements DataStore {
+        private final DataStore inner;
+        volatile int accountSaves;
+        volatile boolean failAccountSaves;
+        volatile boolean failOrderSaves;
+        volatile String failAppendsFor;   // fails any log write that has a record of this account
+
+        CountingStore(DataStore inner) { this.inner = inner; }
+
+        @Override public List<Account> loadAccounts() throws IOException { return inner.loadAccounts(); }
+        @Override public void saveAccounts(List<Account> accounts) throws IOException {
+            if (failAccountSaves) throw new IOException("simulated disk failure");
+            accountSaves++;
+            inner.saveAccounts(accounts);
+        }
+        @Override public void appendTransaction(Transaction tx) throws IOException {
+            appendTransactions(List.of(tx));
+        }
+        @Override public void appendTransactions(List<Transaction> txs) throws IOException {
+            for (Transaction tx : txs) {
+                if (tx.getAccountNumber().equals(failAppendsFor)) throw new IOException("simulated disk failure");
+            }
+            inner.appendTransactions(txs);
+        }
+        @Override public List<Transaction> loadLastNTransactions(String accountNumber, int n) throws IOException {
+            return inner.loadLastNTransactions(accountNumber, n);
+        }
+        @Override public void forEachTransaction(Consumer<Transaction> action) throws IOException { inner.forEachTransaction(action); }
+        @Override public List<StandingOrder> loadStandingOrders() throws IOException { return inner.loadStandingOrders(); }
+        @Override public void saveStandingOrders(List<StandingOrder> changed) throws IOException {
+            if (failOrderSaves) throw new IOException("simulated crash");
+            inner.saveStandingOrders(changed);
+        }
+        @Override public Set<String> loadCheckpoint(String jobId) throws IOException { return inner.loadCheckpoint(jobId); }
+        @Override public void appendCheckpoint(String jobId, String entry) throws IOException { inner.appendCheckpoint(jobId, entry); }
+    }
+}
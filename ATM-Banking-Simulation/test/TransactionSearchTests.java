@@ -0,0 +1,166 @@
+/*
+ * TransactionSearchTests.java - Indexed transaction search against a plain log scan.
+ * Run with: javac ... && java -ea -cp out TransactionSearchTests
+ */
+import atm.*;
+
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+public class TransactionSearchTests {
+    private static final String[] ACCOUNTS = {"200001", "200002", "200003", "200004", "200005", "200006"};
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 9, 0);
+
+    public static void main(String[] args) throws Exception {
+        Logger logger = Logger.getLogger("atm-search");
+        logger.setUseParentHandlers(false);
+        Path dir = Files.createTempDirectory("atm-search");
+        FileDataStore file = new FileDataStore(dir);
+
+        // a small memory budget so accounts are spilled and reloaded during the run
+        IndexedDataStore indexed = new IndexedDataStore(file, dir.resolve("index"), 500, logger);
+        Random rnd = new Random(42);
+        List<Transaction> batch = new ArrayList<>();
+        for (int i = 0; i < 6000; i++) {
+            String acc = ACCOUNTS[rnd.nextInt(ACCOUNTS.length)];
+            String other = ACCOUNTS[rnd.nextInt(ACCOUNTS.length)];
+            TransactionType type = TransactionType.values()[rnd.nextInt(TransactionType.values().length)];
+            BigDecimal amount = BigDecimal.valueOf(rnd.nextInt(50_000), 2);
+            String cp = type == TransactionType.TRANSFER_OUT || type == TransactionType.TRANSFER_IN ? other : "";
+            batch.add(new Transaction(START.plusMinutes(i * 37L), acc, type, amount,
+                    type == TransactionType.LOGIN ? null : amount, "Row " + i, cp));
+            if (batch.size() == 100 || i % 7 == 0) {
+                indexed.appendTransactions(batch);
+                batch.clear();
+            }
+        }
+        indexed.appendTransactions(batch);
+        assert indexed.spillCount() > 0 : "Budget never forced a spill";
+        assert indexed.residentRows() <= 500 + 6000 / ACCOUNTS.length * 2 : "Resident rows over budget: " + indexed.residentRows();
+        // every row has its own details string: the dictionary must spill with the rows
+        assert indexed.residentStrings() < 6000 / 2 : "Dictionary strings kept in memory: " + indexed.residentStrings();
+
+        List<TransactionQuery> queries = List.of(
+                TransactionQuery.all(),
+                TransactionQuery.all().withTypes(TransactionType.TRANSFER_OUT).withCounterparty("200002")
+                        .withAmountBetween(new BigDecimal("100.00"), null)
+                        .withDateBetween(START.plusDays(10), START.plusDays(100)),
+                TransactionQuery.all().withTypes(TransactionType.DEPOSIT, TransactionType.WITHDRAW)
+                        .withAmountBetween(new BigDecimal("10.005"), new BigDecimal("250")),
+                TransactionQuery.all().withCounterparty("999999"),
+                TransactionQuery.all().withDateBetween(START.plusDays(150), null).withPage(2, 7));
+        for (String acc : ACCOUNTS) {
+            for (TransactionQuery q : queries) {
+                assertSamePage(indexed.searchTransactions(acc, q), file.searchTransactions(acc, q), acc);
+            }
+            assertSameRows(indexed.loadLastNTransactions(acc, 25), file.loadLastNTransactions(acc, 25), acc + " lastN");
+        }
+        assert indexed.reloadCount() > 0 : "Spilled accounts were never read back";
+
+        // walking the pages yields the same rows as one large page
+        TransactionQuery transfers = TransactionQuery.all().withTypes(TransactionType.TRANSFER_IN);
+        List<Transaction> paged = new ArrayList<>();
+        TransactionPage page = indexed.searchTransactions("200003", transfers.withPage(0, 9));
+        paged.addAll(page.getItems());
+        while (page.hasNext()) {
+            page = indexed.searchTransactions("200003", transfers.withPage(page.getPage() + 1, 9));
+            paged.addAll(page.getItems());
+        }
+        TransactionPage whole = indexed.searchTransactions("200003", transfers.withPage(0, 1000));
+        assert whole.getTotalMatches() > 9 : "Expected several pages";
+        assertSameRows(paged, whole.getItems(), "paging");
+
+        // searches of spilled accounts run outside the index lock while appends go on; the new
+        // rows are later than the searched window, so the results must not change
+        TransactionQuery window = TransactionQuery.all().withDateBetween(START, START.plusDays(100)).withPage(0, 50);
+        Map<String, TransactionPage> before = new HashMap<>();
+        for (String acc : ACCOUNTS) before.put(acc, file.searchTransactions(acc, window));
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        Thread appender = new Thread(() -> {
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    indexed.appendTransaction(new Transaction(START.plusDays(200).plusMinutes(i),
+                            ACCOUNTS[i % ACCOUNTS.length], TransactionType.DEPOSIT, BigDecimal.ONE, null, "Late " + i, ""));
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        long reloadsBefore = indexed.reloadCount();
+        appender.start();
+        while (appender.isAlive()) {
+            for (String acc : ACCOUNTS) assertSamePage(indexed.searchTransactions(acc, window), before.get(acc), acc + " concurrent");
+        }
+        appender.join();
+        assert failures.isEmpty() : "Append failed: " + failures;
+        assert indexed.reloadCount() > reloadsBefore : "No spilled account was read back";
+
+        // a restarted store rebuilds the same index from the log
+        IndexedDataStore reopened = new IndexedDataStore(new FileDataStore(dir), dir.resolve("index-reopened"), 500, logger);
+        assertSamePage(reopened.searchTransactions("200001", queries.get(1)), indexed.searchTransactions("200001", queries.get(1)), "restart");
+
+        // an append that reaches the log but not the index (its spill file is gone) still
+        // succeeds, and the next read rebuilds the index from the log
+        IndexedDataStore broken = new IndexedDataStore(new FileDataStore(dir), dir.resolve("index-broken"), 500, logger);
+        try (DirectoryStream<Path> spilled = Files.newDirectoryStream(dir.resolve("index-broken"), "*.col")) {
+            for (Path p : spilled) Files.delete(p);
+        }
+        for (String acc : ACCOUNTS) {
+            broken.appendTransaction(new Transaction(START.plusDays(400), acc, TransactionType.DEPOSIT, BigDecimal.ONE,
+                    BigDecimal.ONE, "After the spill file was lost", ""));
+        }
+        for (String acc : ACCOUNTS) {
+            assertSameRows(broken.loadLastNTransactions(acc, 5), file.loadLastNTransactions(acc, 5), acc + " rebuilt");
+        }
+
+        // end to end through Bank, including query validation
+        Bank bank = new Bank(indexed, logger);
+        boolean rejected = false;
+        try {
+            bank.search("200001", TransactionQuery.all().withPage(0, 0));
+        } catch (atm.exceptions.ValidationException expected) {
+            rejected = true;
+        }
+        assert rejected : "Page size 0 accepted";
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < 50; i++) indexed.searchTransactions(ACCOUNTS[i % ACCOUNTS.length], queries.get(1));
+        long t1 = System.nanoTime();
+        for (int i = 0; i < 50; i++) file.searchTransactions(ACCOUNTS[i % ACCOUNTS.length], queries.get(1));
+        long t2 = System.nanoTime();
+        System.out.printf("50 searches: index %.1f ms, log scan %.1f ms%n", (t1 - t0) / 1e6, (t2 - t1) / 1e6);
+
+        System.out.println("All transaction search tests passed");
+    }
+
+    private static void assertSamePage(TransactionPage actual, TransactionPage expected, String what) {
+        assert actual.getTotalMatches() == expected.getTotalMatches()
+                : what + ": " + actual.getTotalMatches() + " matches, expected " + expected.getTotalMatches();
+        assertSameRows(actual.getItems(), expected.getItems(), what);
+    }
+
+    private static void assertSameRows(List<Transaction> actual, List<Transaction> expected, String what) {
+        assert actual.size() == expected.size() : what + ": " + actual.size() + " rows, expected " + expected.size();
+        for (int i = 0; i < actual.size(); i++) {
+            Transaction a = actual.get(i), e = expected.get(i);
+            boolean same = a.getTimestamp().equals(e.getTimestamp()) && a.getType() == e.getType()
+                    && a.getAccountNumber().equals(e.getAccountNumber())
+                    && a.getAmount().compareTo(e.getAmount()) == 0
+                    && (a.getBalanceAfter() == null ? e.getBalanceAfter() == null : a.getBalanceAfter().compareTo(e.getBalanceAfter()) == 0)
+                    && a.getDetails().equals(e.getDetails()) && Objects.equals(a.getCounterparty(), e.getCounterparty());
+            assert same : what + ": row " + i + " is " + a.toCsvLine() + ", expected " + e.toCsvLine();
+        }
+    }
+}